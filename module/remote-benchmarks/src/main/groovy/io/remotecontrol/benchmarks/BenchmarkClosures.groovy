@@ -0,0 +1,31 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.benchmarks
+
+/**
+ * The closures that the benchmarks send, compiled so that their class definitions can be found on the class path.
+ */
+class BenchmarkClosures {
+
+    static Closure simple() {
+        return { -> 1 }
+    }
+
+    static Closure withInnerClosures() {
+        return { -> [1, 2, 3].collect { it * 2 }.findAll { it > 2 }.inject(0) { sum, it -> sum + it } }
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.benchmarks;
+
+import groovy.lang.Closure;
+import io.remotecontrol.groovy.ClosureCommand;
+import io.remotecontrol.groovy.client.ClosureCommandGenerator;
+import io.remotecontrol.groovy.client.RawClosureCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+
+@State(Scope.Benchmark)
+public class ClosureCommandGeneratorBenchmark {
+
+    @Param({"simple", "withInnerClosures"})
+    public String closure;
+
+    private ClosureCommandGenerator generator;
+    private RawClosureCommand command;
+
+    @Setup
+    public void setup() {
+        generator = new ClosureCommandGenerator(getClass().getClassLoader());
+        Closure<?> root = closure.equals("simple") ? BenchmarkClosures.simple() : BenchmarkClosures.withInnerClosures();
+        command = new RawClosureCommand(root, Collections.<Closure<?>>emptyList());
+    }
+
+    @Benchmark
+    public ClosureCommand generate() {
+        return generator.generate(command);
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.benchmarks;
+
+import groovy.lang.Closure;
+import io.remotecontrol.groovy.ClosureCommand;
+import io.remotecontrol.groovy.client.ClosureCommandGenerator;
+import io.remotecontrol.groovy.client.RawClosureCommand;
+import io.remotecontrol.server.CommandClassLoaderCache;
+import io.remotecontrol.server.CommandInvoker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Collections;
+
+@State(Scope.Benchmark)
+public class CommandInvokerBenchmark {
+
+    /**
+     * The size of the class loader cache, 0 meaning the classes are defined for every command.
+     */
+    @Param({"0", "256"})
+    public int classLoaderCacheSize;
+
+    private ExposingCommandInvoker invoker;
+
+    @Setup
+    public void setup() {
+        ClassLoader classLoader = getClass().getClassLoader();
+        ClosureCommand command = new ClosureCommandGenerator(classLoader).generate(new RawClosureCommand(BenchmarkClosures.withInnerClosures(), Collections.<Closure<?>>emptyList()));
+        invoker = new ExposingCommandInvoker(classLoader, command, new CommandClassLoaderCache(classLoader, classLoaderCacheSize));
+    }
+
+    @Benchmark
+    public Closure<?> instantiate() throws IOException {
+        return invoker.instantiate();
+    }
+
+    private static class ExposingCommandInvoker extends CommandInvoker {
+        ExposingCommandInvoker(ClassLoader parentLoader, ClosureCommand command, CommandClassLoaderCache classLoaderCache) {
+            super(parentLoader, command, classLoaderCache);
+        }
+
+        @Override
+        protected Closure<?> instantiate() throws IOException {
+            return super.instantiate();
+        }
+    }
+
+}
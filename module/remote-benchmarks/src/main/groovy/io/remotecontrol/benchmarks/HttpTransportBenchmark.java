@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import groovy.lang.Closure;
+import io.remotecontrol.codec.Codecs;
+import io.remotecontrol.groovy.client.RemoteControl;
+import io.remotecontrol.groovy.server.ClosureReceiver;
+import io.remotecontrol.transport.http.HttpTransport;
+import io.remotecontrol.transport.http.RemoteControlHttpHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Round trips over the HTTP transport, to a receiver in an in process HttpServer.
+ */
+@State(Scope.Benchmark)
+public class HttpTransportBenchmark {
+
+    @Param({"java", "binary"})
+    public String codec;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private RemoteControl remote;
+    private Closure<?>[] commands;
+
+    @Setup
+    public void setup() throws IOException {
+        ClassLoader classLoader = getClass().getClassLoader();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new RemoteControlHttpHandler(new ClosureReceiver(classLoader)));
+        serverExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        HttpTransport transport = new HttpTransport("http://localhost:" + server.getAddress().getPort() + "/", classLoader);
+        transport.setCodec(Codecs.forName(codec));
+        remote = new RemoteControl(transport, classLoader);
+        commands = new Closure<?>[]{BenchmarkClosures.withInnerClosures()};
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdown();
+    }
+
+    @Benchmark
+    public Object exec() throws IOException {
+        return remote.exec(commands);
+    }
+
+}
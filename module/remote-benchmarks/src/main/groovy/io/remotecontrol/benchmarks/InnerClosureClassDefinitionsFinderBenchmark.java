@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.benchmarks;
+
+import groovy.lang.Closure;
+import io.remotecontrol.groovy.client.ClassPathIndex;
+import io.remotecontrol.groovy.client.InnerClosureClassDefinitionsFinder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+
+@State(Scope.Benchmark)
+public class InnerClosureClassDefinitionsFinderBenchmark {
+
+    private InnerClosureClassDefinitionsFinder finder;
+    private Class<? extends Closure> closureClass;
+
+    @Setup
+    public void setup() {
+        finder = new InnerClosureClassDefinitionsFinder(getClass().getClassLoader(), new ClassPathIndex());
+        closureClass = BenchmarkClosures.withInnerClosures().getClass();
+    }
+
+    @Benchmark
+    public List<byte[]> find() throws IOException {
+        return finder.find(closureClass);
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.benchmarks;
+
+import groovy.lang.Closure;
+import io.remotecontrol.groovy.client.RemoteControl;
+import io.remotecontrol.groovy.server.ClosureReceiver;
+import io.remotecontrol.server.Receiver;
+import io.remotecontrol.transport.local.LocalTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Round trips over the local transport, with the command chain either handed to the receiver as is or serialised.
+ */
+@State(Scope.Benchmark)
+public class LocalTransportBenchmark {
+
+    @Param({"direct", "serialized"})
+    public String mode;
+
+    private RemoteControl remote;
+    private Closure<?>[] commands;
+
+    @Setup
+    public void setup() {
+        ClassLoader classLoader = getClass().getClassLoader();
+        final ClosureReceiver closureReceiver = new ClosureReceiver(classLoader);
+        Receiver receiver = closureReceiver;
+        if (mode.equals("serialized")) {
+            receiver = new Receiver() {
+                public void execute(InputStream commandStream, OutputStream resultStream) throws IOException {
+                    closureReceiver.execute(commandStream, resultStream);
+                }
+            };
+        }
+
+        remote = new RemoteControl(new LocalTransport(receiver, classLoader), classLoader);
+        commands = new Closure<?>[]{BenchmarkClosures.withInnerClosures()};
+    }
+
+    @Benchmark
+    public Object exec() throws IOException {
+        return remote.exec(commands);
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.benchmarks;
+
+import io.remotecontrol.result.Result;
+import io.remotecontrol.result.ResultFactory;
+import io.remotecontrol.result.impl.DefaultResultFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@State(Scope.Benchmark)
+public class ResultFactoryBenchmark {
+
+    @Param({"null", "string", "list", "unserializable"})
+    public String value;
+
+    private ResultFactory resultFactory;
+    private Object object;
+
+    @Setup
+    public void setup() {
+        resultFactory = new DefaultResultFactory();
+        if (value.equals("string")) {
+            object = "result";
+        } else if (value.equals("list")) {
+            List<Integer> list = new ArrayList<Integer>();
+            for (int i = 0; i < 1000; ++i) {
+                list.add(i);
+            }
+            object = list;
+        } else if (value.equals("unserializable")) {
+            object = new Object();
+        }
+    }
+
+    @Benchmark
+    public Result forValue() {
+        return resultFactory.forValue(object);
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.benchmarks;
+
+import groovy.lang.Closure;
+import io.remotecontrol.codec.Codecs;
+import io.remotecontrol.groovy.client.RemoteControl;
+import io.remotecontrol.groovy.server.ClosureReceiver;
+import io.remotecontrol.transport.socket.RemoteControlSocketServer;
+import io.remotecontrol.transport.socket.SocketTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+
+/**
+ * Round trips over the socket transport, to an in process server.
+ */
+@State(Scope.Benchmark)
+public class SocketTransportBenchmark {
+
+    @Param({"java", "binary"})
+    public String codec;
+
+    private RemoteControlSocketServer server;
+    private SocketTransport transport;
+    private RemoteControl remote;
+    private Closure<?>[] commands;
+
+    @Setup
+    public void setup() throws IOException {
+        ClassLoader classLoader = getClass().getClassLoader();
+
+        server = new RemoteControlSocketServer(new ClosureReceiver(classLoader), 0);
+        server.start();
+
+        transport = new SocketTransport("localhost", server.getPort(), classLoader);
+        transport.setCodec(Codecs.forName(codec));
+        remote = new RemoteControl(transport, classLoader);
+        commands = new Closure<?>[]{BenchmarkClosures.withInnerClosures()};
+    }
+
+    @TearDown
+    public void tearDown() {
+        transport.close();
+        server.close();
+    }
+
+    @Benchmark
+    public Object exec() throws IOException {
+        return remote.exec(commands);
+    }
+
+}
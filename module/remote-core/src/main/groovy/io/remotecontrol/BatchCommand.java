@@ -0,0 +1,48 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol;
+
+import java.util.List;
+
+/**
+ * A command that carries other command chains, so that they can be sent to the receiver in one request.
+ *
+ * The chains are independent, each producing its own result. They are executed in order, unless the batch is parallel.
+ */
+public class BatchCommand implements Command {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<CommandChain<?>> commandChains;
+    private final boolean parallel;
+
+    /**
+     * @param parallel whether the chains may be executed concurrently
+     */
+    public BatchCommand(List<CommandChain<?>> commandChains, boolean parallel) {
+        this.commandChains = commandChains;
+        this.parallel = parallel;
+    }
+
+    public List<CommandChain<?>> getCommandChains() {
+        return commandChains;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.remotecontrol;
+
+/**
+ * A class loader that can define classes from their class definitions itself.
+ *
+ * {@link SerializationUtil#defineClass(ClassLoader, byte[])} defines classes in such loaders directly, instead of invoking the
+ * protected {@code defineClass} method of the loader reflectively.
+ */
+public interface ClassDefiner {
+
+    /**
+     * Defines the class of the given definition now.
+     *
+     * @throws LinkageError if the class has already been defined
+     */
+    Class<?> define(byte[] definition);
+
+}
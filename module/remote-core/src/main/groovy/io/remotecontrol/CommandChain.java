@@ -1,5 +1,7 @@
 package io.remotecontrol;
 
+import io.remotecontrol.codec.Codec;
+import io.remotecontrol.codec.Codecs;
 import io.remotecontrol.util.UnexpectedIOException;
 
 import java.io.IOException;
@@ -14,10 +16,20 @@ public class CommandChain<T extends Command> implements Serializable {
 
     private final Class<T> type;
     private final List<? extends T> commands;
+    private final boolean resultDiscarded;
 
-    public CommandChain(Class<T> type, List<? extends T> commands) {
+    /**
+     * @param resultDiscarded whether the receiver should discard the result of the chain instead of returning it, in which case the result is null
+     * (exceptions are still returned)
+     */
+    public CommandChain(Class<T> type, List<? extends T> commands, boolean resultDiscarded) {
         this.type = type;
         this.commands = commands;
+        this.resultDiscarded = resultDiscarded;
+    }
+
+    public CommandChain(Class<T> type, List<? extends T> commands) {
+        this(type, commands, false);
     }
 
     public Class<T> getType() {
@@ -28,9 +40,31 @@ public class CommandChain<T extends Command> implements Serializable {
         return commands;
     }
 
+    public boolean isResultDiscarded() {
+        return resultDiscarded;
+    }
+
+    /**
+     * Returns a chain of the given commands, with the same type and options as this chain.
+     */
+    public CommandChain<T> withCommands(List<? extends T> commands) {
+        return new CommandChain<T>(type, commands, resultDiscarded);
+    }
+
+    /**
+     * Returns a copy of this chain whose result the receiver should discard.
+     */
+    public CommandChain<T> withResultDiscarded() {
+        return new CommandChain<T>(type, commands, true);
+    }
+
     public void writeTo(OutputStream outputStream) {
+        writeTo(outputStream, Codecs.getDefault());
+    }
+
+    public void writeTo(OutputStream outputStream, Codec codec) {
         try {
-            SerializationUtil.serialize(this, outputStream);
+            codec.writeCommandChain(this, outputStream);
         } catch (IOException e) {
             throw new UnexpectedIOException("command chain should be serializable", e);
         }
@@ -16,7 +16,11 @@
 
 package io.remotecontrol;
 
+import io.remotecontrol.metrics.Metrics;
+import io.remotecontrol.metrics.MetricsListener;
+import io.remotecontrol.metrics.Phase;
 import io.remotecontrol.util.ClassLoaderConfigurableObjectInputStream;
+import io.remotecontrol.util.DirectByteArrayOutputStream;
 import io.remotecontrol.util.UnexpectedIOException;
 
 import java.io.*;
@@ -25,17 +29,30 @@ import java.lang.reflect.Method;
 
 public class SerializationUtil {
 
+    private static Method defineClassMethod;
+
     public static byte[] serialize(Serializable serializable) throws NotSerializableException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        return serializeToBuffer(serializable).toByteArray();
+    }
+
+    /**
+     * Serializes the object into a buffer, which can be written out (or wrapped) without copying the bytes into an array of their own.
+     */
+    public static DirectByteArrayOutputStream serializeToBuffer(Serializable serializable) throws NotSerializableException {
+        MetricsListener metrics = Metrics.getListener();
+        long start = System.nanoTime();
+        DirectByteArrayOutputStream buffer = new DirectByteArrayOutputStream();
         try {
-            serialize(serializable, baos);
+            serialize(serializable, buffer);
         } catch (IOException e) {
             if (e instanceof NotSerializableException) {
                 throw (NotSerializableException) e;
             }
             throw new UnexpectedIOException("Unexpected exception while serializing object: " + serializable, e);
         }
-        return baos.toByteArray();
+        metrics.time(Phase.SERIALIZE, System.nanoTime() - start);
+        metrics.bytes(Phase.SERIALIZE, buffer.size());
+        return buffer;
     }
 
     public static void serialize(Serializable serializable, OutputStream outputStream) throws IOException {
@@ -52,10 +69,22 @@ public class SerializationUtil {
     }
 
     public static <T> T deserialize(Class<T> type, byte[] bytes, ClassLoader classLoader) throws ClassNotFoundException {
+        return deserialize(type, bytes, bytes.length, classLoader);
+    }
+
+    /**
+     * Deserializes the object serialized in the first {@code length} bytes of the given array.
+     */
+    public static <T> T deserialize(Class<T> type, byte[] bytes, int length, ClassLoader classLoader) throws ClassNotFoundException {
+        MetricsListener metrics = Metrics.getListener();
+        long start = System.nanoTime();
         try {
-            return deserialize(type, new ByteArrayInputStream(bytes), classLoader);
+            return deserialize(type, new ByteArrayInputStream(bytes, 0, length), classLoader);
         } catch (IOException e) {
             throw new UnexpectedIOException("Unexpected exception while deserializing in memory", e);
+        } finally {
+            metrics.time(Phase.DESERIALIZE, System.nanoTime() - start);
+            metrics.bytes(Phase.DESERIALIZE, length);
         }
     }
 
@@ -68,18 +97,40 @@ public class SerializationUtil {
         }
     }
 
+    /**
+     * Defines the class in the given loader.
+     *
+     * Classes are defined in a {@link ClassDefiner} directly. Any other loader has its protected {@code defineClass} method
+     * invoked reflectively, which the JVM may not allow.
+     */
     public static Class<?> defineClass(ClassLoader classLoader, byte[] bytes) {
+        if (classLoader instanceof ClassDefiner) {
+            return ((ClassDefiner) classLoader).define(bytes);
+        }
+
         try {
-            Method defineClass = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class, int.class, int.class);
-            defineClass.setAccessible(true);
-            Object clazz = defineClass.invoke(classLoader, null, bytes, 0, bytes.length);
+            Object clazz = getDefineClassMethod().invoke(classLoader, null, bytes, 0, bytes.length);
             return (Class<?>) clazz;
-        } catch (NoSuchMethodException e) {
-            throw new IllegalStateException(e);
         } catch (InvocationTargetException e) {
             throw new IllegalStateException(e);
         } catch (IllegalAccessException e) {
             throw new IllegalStateException(e);
         }
     }
+
+    private static synchronized Method getDefineClassMethod() {
+        if (defineClassMethod == null) {
+            try {
+                Method method = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class, int.class, int.class);
+                method.setAccessible(true);
+                defineClassMethod = method;
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            } catch (RuntimeException e) {
+                // e.g. the JVM does not open java.lang to us
+                throw new IllegalStateException("Cannot define classes in arbitrary class loaders, use a ClassDefiner", e);
+            }
+        }
+        return defineClassMethod;
+    }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol;
+
+/**
+ * Requests the next chunk of elements of a result stream opened by a {@link StreamCommand}, or closes the stream.
+ */
+public class StreamChunkCommand implements Command {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long streamId;
+    private final int chunkSize;
+    private final boolean close;
+
+    /**
+     * @param chunkSize the maximum number of elements to return, ignored if closing the stream
+     * @param close whether to discard the rest of the stream instead of returning the next chunk
+     */
+    public StreamChunkCommand(long streamId, int chunkSize, boolean close) {
+        if (chunkSize < 1 && !close) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.streamId = streamId;
+        this.chunkSize = chunkSize;
+        this.close = close;
+    }
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public boolean isClose() {
+        return close;
+    }
+
+}
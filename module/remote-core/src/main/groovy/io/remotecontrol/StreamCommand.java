@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol;
+
+/**
+ * A command that carries another command chain, whose result is to be streamed back to the client in chunks.
+ *
+ * The result of the chain is iterated on the receiver, which responds with a {@link io.remotecontrol.result.StreamResult}
+ * holding the first chunk of elements. The rest are requested with {@link StreamChunkCommand}s, one chunk at a time.
+ */
+public class StreamCommand implements Command {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    private final CommandChain<?> commandChain;
+    private final int chunkSize;
+
+    /**
+     * @param chunkSize the maximum number of elements to return in each chunk
+     */
+    public StreamCommand(CommandChain<?> commandChain, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.commandChain = commandChain;
+        this.chunkSize = chunkSize;
+    }
+
+    public CommandChain<?> getCommandChain() {
+        return commandChain;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.client;
+
+import io.remotecontrol.CommandChain;
+import io.remotecontrol.result.Result;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+/**
+ * A transport that can send command chains without blocking the caller until the result arrives.
+ */
+public interface AsyncTransport extends Transport {
+
+    /**
+     * Sends the command chain, returning a future for its result.
+     *
+     * Failures to send the chain may be thrown directly or via the future.
+     */
+    Future<Result> sendAsync(CommandChain<?> commandChain) throws IOException;
+
+}
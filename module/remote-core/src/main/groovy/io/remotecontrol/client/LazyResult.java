@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.client;
+
+import io.remotecontrol.result.NullResult;
+import io.remotecontrol.result.Result;
+
+/**
+ * The result of a command chain, whose value is only deserialised when it is first accessed.
+ *
+ * Exceptions raised by the chain are not deferred, they are thrown when the handle is created. Instances are safe to share between threads.
+ */
+public class LazyResult {
+
+    private final RemoteControlSupport<?> support;
+    private Result result;
+    private Object value;
+
+    LazyResult(RemoteControlSupport<?> support, Result result) {
+        this.support = support;
+        this.result = result;
+    }
+
+    /**
+     * Returns the value, deserialising it if this is the first access.
+     */
+    public synchronized Object get() {
+        if (result != null) {
+            value = support.processResult(result);
+            result = null;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value as the given type, deserialising it if this is the first access.
+     *
+     * @throws ClassCastException if the value is not null and not an instance of the type
+     */
+    public <T> T get(Class<T> type) {
+        return type.cast(get());
+    }
+
+    /**
+     * Whether the value is null, which does not require deserialising it.
+     */
+    public synchronized boolean isNull() {
+        return result == null ? value == null : result instanceof NullResult;
+    }
+
+    /**
+     * Whether the value has been deserialised.
+     */
+    public synchronized boolean isDeserialized() {
+        return result == null;
+    }
+
+}
@@ -16,11 +16,23 @@
 
 package io.remotecontrol.client;
 
+import io.remotecontrol.BatchCommand;
 import io.remotecontrol.Command;
 import io.remotecontrol.CommandChain;
+import io.remotecontrol.StreamCommand;
+import io.remotecontrol.metrics.Metrics;
+import io.remotecontrol.metrics.MetricsListener;
+import io.remotecontrol.metrics.Phase;
 import io.remotecontrol.result.*;
+import io.remotecontrol.util.TransformingFuture;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class RemoteControlSupport<T extends Command> {
 
@@ -39,11 +51,103 @@ public class RemoteControlSupport<T extends Command> {
         return processResult(result);
     }
 
+    /**
+     * Sends the command chain, returning a handle that only deserialises the result when it is accessed.
+     *
+     * Exceptions raised by the commands are thrown immediately.
+     */
+    public LazyResult sendLazy(CommandChain<T> commandChain) throws IOException {
+        Result result = sendCommandChain(commandChain);
+        if (result instanceof ThrownResult || result instanceof UnserializableThrownResult) {
+            processResult(result);
+        }
+        return new LazyResult(this, result);
+    }
+
+    /**
+     * Sends the command chain, returning a future for the processed result.
+     *
+     * If the transport is an {@link AsyncTransport}, the caller is not blocked while the chain executes. Otherwise the chain is sent
+     * synchronously and the returned future is already complete. Exceptions raised by the commands are thrown by the future,
+     * wrapped in an {@link java.util.concurrent.ExecutionException}.
+     */
+    public Future<Object> sendAsync(CommandChain<T> commandChain) throws IOException {
+        return new TransformingFuture<Result, Object>(sendCommandChainAsync(commandChain)) {
+            @Override
+            protected Object transform(Result result) {
+                return processResult(result);
+            }
+        };
+    }
+
+    /**
+     * Sends the command chains to be executed as one batch, returning their processed results in the same order.
+     *
+     * Every chain is executed, even if others fail. If any chain failed, the exception of the first failed chain (in batch order) is thrown.
+     *
+     * @param parallel whether the receiver may execute the chains concurrently
+     */
+    public List<Object> sendBatch(List<CommandChain<T>> commandChains, boolean parallel) throws IOException {
+        BatchCommand batch = new BatchCommand(new ArrayList<CommandChain<?>>(commandChains), parallel);
+        Result result = sendCommandChain(CommandChain.of(BatchCommand.class, Collections.singletonList(batch)));
+        if (!(result instanceof BatchResult)) {
+            // the receiver failed to execute the batch as a whole
+            processResult(result);
+            throw new IllegalStateException("Expected a batch result but got: " + result);
+        }
+
+        List<Result> results = ((BatchResult) result).getResults();
+        List<Object> values = new ArrayList<Object>(results.size());
+        for (Result chainResult : results) {
+            values.add(processResult(chainResult));
+        }
+        return values;
+    }
+
+    /**
+     * Sends the command chain, returning an iterator over the elements of its result that fetches them from the receiver in chunks.
+     *
+     * The result is iterated on the receiver as Groovy would iterate it, so it can be a collection, array, iterator, or anything else with an
+     * {@code iterator()} method. The first chunk is returned with the response to the chain.
+     *
+     * @param chunkSize the maximum number of elements to fetch in each request
+     */
+    public ResultStreamIterator sendStream(CommandChain<T> commandChain, int chunkSize) throws IOException {
+        StreamCommand command = new StreamCommand(commandChain, chunkSize);
+        Result result = sendCommandChain(CommandChain.of(StreamCommand.class, command));
+        return new ResultStreamIterator(this, chunkSize, result);
+    }
+
     protected Result sendCommandChain(CommandChain commandChain) throws IOException {
         return transport.send(commandChain);
     }
 
+    protected Future<Result> sendCommandChainAsync(final CommandChain commandChain) throws IOException {
+        if (transport instanceof AsyncTransport) {
+            return ((AsyncTransport) transport).sendAsync(commandChain);
+        } else {
+            FutureTask<Result> task = new FutureTask<Result>(new Callable<Result>() {
+                @Override
+                public Result call() throws Exception {
+                    return sendCommandChain(commandChain);
+                }
+            });
+            task.run();
+            return task;
+        }
+    }
+
     protected Object processResult(Result result) {
+        MetricsListener metrics = Metrics.getListener();
+        long start = System.nanoTime();
+        try {
+            return decodeResult(result);
+        } finally {
+            metrics.time(Phase.DECODE_RESULT, System.nanoTime() - start);
+        }
+    }
+
+    private Object decodeResult(Result result) {
         if (result instanceof NullResult) {
             return null;
         } else if (result instanceof ThrownResult) {
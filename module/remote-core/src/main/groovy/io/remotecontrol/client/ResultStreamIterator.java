@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.client;
+
+import io.remotecontrol.CommandChain;
+import io.remotecontrol.RemoteControlException;
+import io.remotecontrol.StreamChunkCommand;
+import io.remotecontrol.result.Result;
+import io.remotecontrol.result.StreamResult;
+import io.remotecontrol.result.UnserializableResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the elements of a result stream, requesting the next chunk from the receiver only once the current one has been consumed.
+ *
+ * The receiver does not advance the stream beyond the chunks that have been requested, so a consumer that is slower than the
+ * receiver holds back the production of elements instead of accumulating them. The receiver closes the stream once all elements
+ * have been requested. An iterator that is abandoned before then should be closed, otherwise the stream is held open on the
+ * receiver until it times out.
+ *
+ * Exceptions raised remotely while iterating the stream are thrown by {@link #hasNext()} as {@link RemoteException}s. A chunk
+ * containing an element that is not serializable causes an {@link UnserializableReturnException}. Instances are not thread safe.
+ */
+public class ResultStreamIterator implements Iterator<Object>, Closeable {
+
+    private final RemoteControlSupport<?> support;
+    private final int chunkSize;
+    private long streamId;
+    private Iterator<?> chunk;
+    private boolean last;
+
+    ResultStreamIterator(RemoteControlSupport<?> support, int chunkSize, Result first) {
+        this.support = support;
+        this.chunkSize = chunkSize;
+        accept(first);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while ((chunk == null || !chunk.hasNext()) && !last) {
+            accept(send(new StreamChunkCommand(streamId, chunkSize, false)));
+        }
+        return chunk != null && chunk.hasNext();
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return chunk.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("result streams are read only");
+    }
+
+    /**
+     * Closes the stream on the receiver, if it has not already been fully consumed.
+     */
+    @Override
+    public void close() throws IOException {
+        chunk = null;
+        if (!last) {
+            last = true;
+            support.sendCommandChain(CommandChain.of(StreamChunkCommand.class, new StreamChunkCommand(streamId, 0, true)));
+        }
+    }
+
+    private Result send(StreamChunkCommand command) {
+        try {
+            return support.sendCommandChain(CommandChain.of(StreamChunkCommand.class, command));
+        } catch (IOException e) {
+            last = true;
+            throw new RemoteControlException("Failed to request the next chunk of result stream " + streamId, e);
+        }
+    }
+
+    private void accept(Result result) {
+        if (!(result instanceof StreamResult)) {
+            // the receiver failed to execute the chain, or to iterate the stream, and has closed it
+            last = true;
+            chunk = null;
+            support.processResult(result);
+            throw new IllegalStateException("Expected a stream result but got: " + result);
+        }
+
+        StreamResult streamResult = (StreamResult) result;
+        streamId = streamResult.getStreamId();
+        last = streamResult.isLast();
+        if (streamResult.getElements() instanceof UnserializableResult) {
+            if (!last) {
+                last = true;
+                send(new StreamChunkCommand(streamId, 0, true));
+            }
+            throw new UnserializableReturnException((UnserializableResult) streamResult.getElements());
+        }
+
+        List<?> elements = (List<?>) support.processResult(streamResult.getElements());
+        chunk = elements.iterator();
+    }
+
+}
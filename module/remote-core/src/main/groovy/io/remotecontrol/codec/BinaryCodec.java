@@ -0,0 +1,494 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.codec;
+
+import io.remotecontrol.BatchCommand;
+import io.remotecontrol.Command;
+import io.remotecontrol.CommandChain;
+import io.remotecontrol.SerializationUtil;
+import io.remotecontrol.StreamChunkCommand;
+import io.remotecontrol.StreamCommand;
+import io.remotecontrol.groovy.ClassDefinitionsQuery;
+import io.remotecontrol.groovy.ClosureCommand;
+import io.remotecontrol.result.Result;
+import io.remotecontrol.result.impl.DefaultBatchResult;
+import io.remotecontrol.result.impl.DefaultMissingClassDefinitionsResult;
+import io.remotecontrol.result.impl.DefaultNullResult;
+import io.remotecontrol.result.impl.DefaultSerializedResult;
+import io.remotecontrol.result.impl.DefaultStreamResult;
+import io.remotecontrol.result.impl.DefaultThrownResult;
+import io.remotecontrol.result.impl.DefaultUnserializableResult;
+import io.remotecontrol.result.impl.DefaultUnserializableThrownResult;
+import io.remotecontrol.util.DirectByteArrayOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the framework's own envelope types field by field, in a compact binary form.
+ *
+ * Command chains of {@link ClosureCommand}s, {@link ClassDefinitionsQuery}s, {@link BatchCommand}s and stream commands, and the default result implementations,
+ * are written without any class descriptors. Any other command or result is written with Java serialisation, inside the binary stream.
+ * Closure instances and result values are always carried as Java serialised bytes, as with the default codec, but as length prefixed
+ * sections of the stream that are written straight from the buffer they were serialised into (rather than as fields of a serialised object).
+ *
+ * The class definitions of all closure commands in a command chain (including those of batched and streamed chains) are written
+ * once, in a table at the start of the chain, which the commands reference by index.
+ */
+public class BinaryCodec implements Codec {
+
+    public static final String NAME = "binary";
+
+    private static final byte[] SIGNATURE = {'R', 'C'};
+    private static final int VERSION = 3;
+
+    private static final int COMMAND_SERIALIZED = 0;
+    private static final int COMMAND_CLOSURE = 1;
+    private static final int COMMAND_CLASS_DEFINITIONS_QUERY = 2;
+    private static final int COMMAND_BATCH = 3;
+    private static final int COMMAND_STREAM = 4;
+    private static final int COMMAND_STREAM_CHUNK = 5;
+
+    private static final int RESULT_SERIALIZED_OBJECT = 0;
+    private static final int RESULT_NULL = 1;
+    private static final int RESULT_SERIALIZED = 2;
+    private static final int RESULT_THROWN = 3;
+    private static final int RESULT_UNSERIALIZABLE = 4;
+    private static final int RESULT_UNSERIALIZABLE_THROWN = 5;
+    private static final int RESULT_MISSING_CLASS_DEFINITIONS = 6;
+    private static final int RESULT_BATCH = 7;
+    private static final int RESULT_STREAM = 8;
+
+    public String getName() {
+        return NAME;
+    }
+
+    public boolean isSignature(byte[] signature) {
+        return signature[0] == SIGNATURE[0] && signature[1] == SIGNATURE[1];
+    }
+
+    public void writeCommandChain(CommandChain<?> commandChain, OutputStream outputStream) throws IOException {
+        // The table has to be read before the chain, so it is completed first and the chain is then written straight after it
+        ClassDefinitionTable table = new ClassDefinitionTable();
+        addClassDefinitions(commandChain, table);
+
+        DataOutputStream output = startWriting(outputStream);
+        table.writeTo(output);
+        writeCommandChain(output, commandChain, table);
+        output.flush();
+    }
+
+    public CommandChain<?> readCommandChain(InputStream inputStream, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+        DataInputStream input = startReading(inputStream);
+        return readCommandChain(input, classLoader, ClassDefinitionTable.readFrom(input));
+    }
+
+    public void writeResult(Result result, OutputStream outputStream) throws IOException {
+        DataOutputStream output = startWriting(outputStream);
+        writeResult(output, result);
+        output.flush();
+    }
+
+    public Result readResult(InputStream inputStream, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+        return readResult(startReading(inputStream), classLoader);
+    }
+
+    private static void writeCommandChain(DataOutputStream output, CommandChain<?> commandChain, ClassDefinitionTable table) throws IOException {
+        output.writeUTF(commandChain.getType().getName());
+        output.writeBoolean(commandChain.isResultDiscarded());
+        output.writeInt(commandChain.getCommands().size());
+        for (Command command : commandChain.getCommands()) {
+            if (command.getClass() == ClosureCommand.class) {
+                output.writeByte(COMMAND_CLOSURE);
+                writeClosureCommand(output, (ClosureCommand) command, table);
+            } else if (command.getClass() == ClassDefinitionsQuery.class) {
+                output.writeByte(COMMAND_CLASS_DEFINITIONS_QUERY);
+                writeStrings(output, ((ClassDefinitionsQuery) command).getDigests());
+            } else if (command.getClass() == BatchCommand.class) {
+                BatchCommand batch = (BatchCommand) command;
+                output.writeByte(COMMAND_BATCH);
+                output.writeBoolean(batch.isParallel());
+                output.writeInt(batch.getCommandChains().size());
+                for (CommandChain<?> chain : batch.getCommandChains()) {
+                    writeCommandChain(output, chain, table);
+                }
+            } else if (command.getClass() == StreamCommand.class) {
+                StreamCommand stream = (StreamCommand) command;
+                output.writeByte(COMMAND_STREAM);
+                output.writeInt(stream.getChunkSize());
+                writeCommandChain(output, stream.getCommandChain(), table);
+            } else if (command.getClass() == StreamChunkCommand.class) {
+                StreamChunkCommand chunk = (StreamChunkCommand) command;
+                output.writeByte(COMMAND_STREAM_CHUNK);
+                output.writeLong(chunk.getStreamId());
+                output.writeInt(chunk.getChunkSize());
+                output.writeBoolean(chunk.isClose());
+            } else {
+                output.writeByte(COMMAND_SERIALIZED);
+                writeSerialized(output, command);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CommandChain<?> readCommandChain(DataInputStream input, ClassLoader classLoader, ClassDefinitionTable table) throws IOException, ClassNotFoundException {
+        Class<?> type = Class.forName(input.readUTF(), false, classLoader);
+        boolean resultDiscarded = input.readBoolean();
+        int size = input.readInt();
+        List<Command> commands = new ArrayList<Command>(size);
+        for (int i = 0; i < size; ++i) {
+            int tag = input.readByte();
+            switch (tag) {
+                case COMMAND_CLOSURE:
+                    commands.add(readClosureCommand(input, table));
+                    break;
+                case COMMAND_CLASS_DEFINITIONS_QUERY:
+                    commands.add(new ClassDefinitionsQuery(readStrings(input)));
+                    break;
+                case COMMAND_BATCH:
+                    boolean parallel = input.readBoolean();
+                    int chainCount = input.readInt();
+                    List<CommandChain<?>> chains = new ArrayList<CommandChain<?>>(chainCount);
+                    for (int j = 0; j < chainCount; ++j) {
+                        chains.add(readCommandChain(input, classLoader, table));
+                    }
+                    commands.add(new BatchCommand(chains, parallel));
+                    break;
+                case COMMAND_STREAM:
+                    int chunkSize = input.readInt();
+                    commands.add(new StreamCommand(readCommandChain(input, classLoader, table), chunkSize));
+                    break;
+                case COMMAND_STREAM_CHUNK:
+                    commands.add(new StreamChunkCommand(input.readLong(), input.readInt(), input.readBoolean()));
+                    break;
+                case COMMAND_SERIALIZED:
+                    commands.add(SerializationUtil.deserialize(Command.class, readBytes(input), classLoader));
+                    break;
+                default:
+                    throw new IOException("Unknown command tag: " + tag);
+            }
+        }
+        return new CommandChain((Class) type, commands, resultDiscarded);
+    }
+
+    /**
+     * Adds the class definitions of all of the closure commands in the chain (including nested chains) to the table.
+     */
+    private static void addClassDefinitions(CommandChain<?> commandChain, ClassDefinitionTable table) {
+        for (Command command : commandChain.getCommands()) {
+            if (command.getClass() == ClosureCommand.class) {
+                addClassDefinitions((ClosureCommand) command, table);
+            } else if (command.getClass() == BatchCommand.class) {
+                for (CommandChain<?> chain : ((BatchCommand) command).getCommandChains()) {
+                    addClassDefinitions(chain, table);
+                }
+            } else if (command.getClass() == StreamCommand.class) {
+                addClassDefinitions(((StreamCommand) command).getCommandChain(), table);
+            }
+        }
+    }
+
+    /**
+     * Adds the command's class definitions to the table, if they are not already in it.
+     *
+     * @return the indexes of the root class and then of each supporting class
+     */
+    private static int[] addClassDefinitions(ClosureCommand command, ClassDefinitionTable table) {
+        List<byte[]> supports = command.hasClassDefinitions() && command.getSupports() != null ? new ArrayList<byte[]>(command.getSupports()) : Collections.<byte[]>emptyList();
+        List<String> supportDigests = command.hasDigests() ? command.getSupportDigests() : Collections.<String>emptyList();
+        int[] indexes = new int[1 + Math.max(supports.size(), supportDigests.size())];
+        indexes[0] = table.add(command.getRootDigest(), command.getRoot());
+        for (int i = 1; i < indexes.length; ++i) {
+            indexes[i] = table.add(i <= supportDigests.size() ? supportDigests.get(i - 1) : null, i <= supports.size() ? supports.get(i - 1) : null);
+        }
+        return indexes;
+    }
+
+    /**
+     * Writes the closure instance, and references to the command's class definitions in the table.
+     */
+    private static void writeClosureCommand(DataOutputStream output, ClosureCommand command, ClassDefinitionTable table) throws IOException {
+        int[] indexes = addClassDefinitions(command, table);
+        writeBytes(output, command.getInstance());
+        output.writeBoolean(command.hasClassDefinitions());
+        output.writeBoolean(command.hasDigests());
+        output.writeInt(indexes[0]);
+        output.writeInt(indexes.length - 1);
+        for (int i = 1; i < indexes.length; ++i) {
+            output.writeInt(indexes[i]);
+        }
+    }
+
+    private static ClosureCommand readClosureCommand(DataInputStream input, ClassDefinitionTable table) throws IOException {
+        byte[] instance = readBytes(input);
+        boolean hasClassDefinitions = input.readBoolean();
+        boolean hasDigests = input.readBoolean();
+        int rootIndex = input.readInt();
+
+        int size = input.readInt();
+        List<byte[]> supports = new ArrayList<byte[]>(hasClassDefinitions ? size : 0);
+        List<String> supportDigests = hasDigests ? new ArrayList<String>(size) : null;
+        for (int i = 0; i < size; ++i) {
+            int index = input.readInt();
+            if (hasClassDefinitions) {
+                supports.add(table.getDefinition(index));
+            }
+            if (hasDigests) {
+                supportDigests.add(table.getDigest(index));
+            }
+        }
+
+        byte[] root = hasClassDefinitions ? table.getDefinition(rootIndex) : null;
+        String rootDigest = hasDigests ? table.getDigest(rootIndex) : null;
+        return new ClosureCommand(instance, root, supports, rootDigest, supportDigests);
+    }
+
+    private static void writeResult(DataOutputStream output, Result result) throws IOException {
+        Class<?> type = result.getClass();
+        if (type == DefaultNullResult.class) {
+            output.writeByte(RESULT_NULL);
+        } else if (type == DefaultSerializedResult.class) {
+            output.writeByte(RESULT_SERIALIZED);
+            writeBytes(output, (DefaultSerializedResult) result);
+        } else if (type == DefaultThrownResult.class) {
+            output.writeByte(RESULT_THROWN);
+            writeBytes(output, (DefaultThrownResult) result);
+        } else if (type == DefaultUnserializableResult.class) {
+            output.writeByte(RESULT_UNSERIALIZABLE);
+            writeString(output, ((DefaultUnserializableResult) result).getStringRepresentation());
+        } else if (type == DefaultUnserializableThrownResult.class) {
+            DefaultUnserializableThrownResult thrownResult = (DefaultUnserializableThrownResult) result;
+            output.writeByte(RESULT_UNSERIALIZABLE_THROWN);
+            writeString(output, thrownResult.getStringRepresentation());
+            writeBytes(output, thrownResult.getWrapperBytes());
+        } else if (type == DefaultMissingClassDefinitionsResult.class) {
+            output.writeByte(RESULT_MISSING_CLASS_DEFINITIONS);
+            writeStrings(output, ((DefaultMissingClassDefinitionsResult) result).getDigests());
+        } else if (type == DefaultBatchResult.class) {
+            List<Result> results = ((DefaultBatchResult) result).getResults();
+            output.writeByte(RESULT_BATCH);
+            output.writeInt(results.size());
+            for (Result chainResult : results) {
+                writeResult(output, chainResult);
+            }
+        } else if (type == DefaultStreamResult.class) {
+            DefaultStreamResult streamResult = (DefaultStreamResult) result;
+            output.writeByte(RESULT_STREAM);
+            output.writeLong(streamResult.getStreamId());
+            output.writeBoolean(streamResult.isLast());
+            writeResult(output, streamResult.getElements());
+        } else {
+            output.writeByte(RESULT_SERIALIZED_OBJECT);
+            writeSerialized(output, result);
+        }
+    }
+
+    private static Result readResult(DataInputStream input, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+        int tag = input.readByte();
+        switch (tag) {
+            case RESULT_NULL:
+                return new DefaultNullResult();
+            case RESULT_SERIALIZED:
+                return new DefaultSerializedResult(readBytes(input));
+            case RESULT_THROWN:
+                return new DefaultThrownResult(readBytes(input));
+            case RESULT_UNSERIALIZABLE:
+                return new DefaultUnserializableResult(readString(input));
+            case RESULT_UNSERIALIZABLE_THROWN:
+                return new DefaultUnserializableThrownResult(readString(input), readBytes(input));
+            case RESULT_MISSING_CLASS_DEFINITIONS:
+                return new DefaultMissingClassDefinitionsResult(readStrings(input));
+            case RESULT_BATCH:
+                int size = input.readInt();
+                List<Result> results = new ArrayList<Result>(size);
+                for (int i = 0; i < size; ++i) {
+                    results.add(readResult(input, classLoader));
+                }
+                return new DefaultBatchResult(results);
+            case RESULT_STREAM:
+                long streamId = input.readLong();
+                boolean last = input.readBoolean();
+                return new DefaultStreamResult(streamId, readResult(input, classLoader), last);
+            case RESULT_SERIALIZED_OBJECT:
+                return SerializationUtil.deserialize(Result.class, readBytes(input), classLoader);
+            default:
+                throw new IOException("Unknown result tag: " + tag);
+        }
+    }
+
+    private static DataOutputStream startWriting(OutputStream outputStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        output.write(SIGNATURE);
+        output.writeByte(VERSION);
+        return output;
+    }
+
+    private static DataInputStream startReading(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        byte[] signature = new byte[SIGNATURE.length];
+        input.readFully(signature);
+        if (signature[0] != SIGNATURE[0] || signature[1] != SIGNATURE[1]) {
+            throw new IOException("Stream was not written by the binary codec");
+        }
+        int version = input.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary codec version: " + version);
+        }
+        return input;
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            output.writeInt(-1);
+        } else {
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream output, DefaultSerializedResult result) throws IOException {
+        output.writeInt(result.getLength());
+        result.writeBytesTo(output);
+    }
+
+    private static void writeSerialized(DataOutputStream output, Serializable serializable) throws IOException {
+        DirectByteArrayOutputStream bytes = SerializationUtil.serializeToBuffer(serializable);
+        output.writeInt(bytes.size());
+        bytes.writeTo(output);
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        output.writeBoolean(string != null);
+        if (string != null) {
+            writeBytes(output, string.getBytes("UTF-8"));
+        }
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        if (!input.readBoolean()) {
+            return null;
+        }
+        return new String(readBytes(input), "UTF-8");
+    }
+
+    private static void writeStrings(DataOutputStream output, List<String> strings) throws IOException {
+        if (strings == null) {
+            output.writeInt(-1);
+        } else {
+            output.writeInt(strings.size());
+            for (String string : strings) {
+                writeString(output, string);
+            }
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream input) throws IOException {
+        int size = input.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String> strings = new ArrayList<String>(size);
+        for (int i = 0; i < size; ++i) {
+            strings.add(readString(input));
+        }
+        return strings;
+    }
+
+    /**
+     * The distinct class definitions of all of the closure commands in a command chain (including nested chains), referenced by index.
+     *
+     * Definitions are identified by their digest, or if a command has no digests, by the identity of the definition bytes.
+     * An entry may have just a digest, when the class definitions have been omitted from the commands.
+     */
+    private static class ClassDefinitionTable {
+        private final List<String> digests = new ArrayList<String>();
+        private final List<byte[]> definitions = new ArrayList<byte[]>();
+        private final Map<String, Integer> digestIndexes = new HashMap<String, Integer>();
+        private final Map<byte[], Integer> definitionIndexes = new IdentityHashMap<byte[], Integer>();
+
+        /**
+         * Adds the definition if it is not already in the table, returning its index (or -1 if both digest and definition are null).
+         */
+        int add(String digest, byte[] definition) {
+            if (digest == null && definition == null) {
+                return -1;
+            }
+
+            Integer index = digest == null ? definitionIndexes.get(definition) : digestIndexes.get(digest);
+            if (index == null) {
+                index = digests.size();
+                digests.add(digest);
+                definitions.add(definition);
+                if (digest == null) {
+                    definitionIndexes.put(definition, index);
+                } else {
+                    digestIndexes.put(digest, index);
+                }
+            } else if (definitions.get(index) == null) {
+                definitions.set(index, definition);
+            }
+            return index;
+        }
+
+        String getDigest(int index) {
+            return index < 0 ? null : digests.get(index);
+        }
+
+        byte[] getDefinition(int index) {
+            return index < 0 ? null : definitions.get(index);
+        }
+
+        void writeTo(DataOutputStream output) throws IOException {
+            output.writeInt(digests.size());
+            for (int i = 0; i < digests.size(); ++i) {
+                writeString(output, digests.get(i));
+                writeBytes(output, definitions.get(i));
+            }
+        }
+
+        static ClassDefinitionTable readFrom(DataInputStream input) throws IOException {
+            ClassDefinitionTable table = new ClassDefinitionTable();
+            int size = input.readInt();
+            for (int i = 0; i < size; ++i) {
+                table.digests.add(readString(input));
+                table.definitions.add(readBytes(input));
+            }
+            return table;
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.codec;
+
+import io.remotecontrol.CommandChain;
+import io.remotecontrol.result.Result;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Writes and reads the envelope types that are exchanged between the client and the receiver.
+ *
+ * The streams written by a codec must start with a signature that identifies the codec, so that the receiving side can
+ * read the stream without being told which codec wrote it (see {@link Codecs#detect(java.io.PushbackInputStream)}).
+ */
+public interface Codec {
+
+    /**
+     * The name of the codec, used to identify it in content types.
+     */
+    String getName();
+
+    /**
+     * Returns whether the given stream signature is the start of a stream written by this codec.
+     *
+     * @param signature the first {@link Codecs#SIGNATURE_LENGTH} bytes of the stream
+     */
+    boolean isSignature(byte[] signature);
+
+    void writeCommandChain(CommandChain<?> commandChain, OutputStream outputStream) throws IOException;
+
+    CommandChain<?> readCommandChain(InputStream inputStream, ClassLoader classLoader) throws IOException, ClassNotFoundException;
+
+    void writeResult(Result result, OutputStream outputStream) throws IOException;
+
+    Result readResult(InputStream inputStream, ClassLoader classLoader) throws IOException, ClassNotFoundException;
+
+}
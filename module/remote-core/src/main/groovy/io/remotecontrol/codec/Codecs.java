@@ -0,0 +1,152 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.ServiceLoader;
+
+/**
+ * The available codecs, and the means to find the one that a stream or content type uses.
+ *
+ * Besides {@link #JAVA} and {@link #BINARY}, the implementations of {@link Codec} registered as services (i.e. in
+ * {@code META-INF/services/io.remotecontrol.codec.Codec}) that are visible to this class are available, as are those
+ * {@link #register(Codec) registered} at runtime. A codec must be available on both sides to be used.
+ */
+public abstract class Codecs {
+
+    /**
+     * The number of bytes at the start of a stream that identify the codec that wrote it.
+     */
+    public static final int SIGNATURE_LENGTH = 2;
+
+    /**
+     * The name of the content type parameter that carries the codec name.
+     */
+    public static final String CONTENT_TYPE_PARAMETER = "codec";
+
+    public static final Codec JAVA = new JavaSerializationCodec();
+    public static final Codec BINARY = new BinaryCodec();
+
+    private static volatile Codec[] codecs = loadCodecs();
+
+    private Codecs() {
+
+    }
+
+    /**
+     * The codec used when none is specified.
+     */
+    public static Codec getDefault() {
+        return JAVA;
+    }
+
+    /**
+     * Returns the codec with the given name.
+     *
+     * @throws IllegalArgumentException if there is no such codec
+     */
+    public static Codec forName(String name) {
+        for (Codec codec : codecs) {
+            if (codec.getName().equals(name)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown codec: " + name);
+    }
+
+    /**
+     * Returns the codec named by the codec parameter of the given content type, or the default codec if the content type has no such parameter.
+     *
+     * @throws IllegalArgumentException if the content type names an unknown codec
+     */
+    public static Codec forContentType(String contentType) {
+        if (contentType != null) {
+            String[] parts = contentType.split(";");
+            for (int i = 1; i < parts.length; ++i) {
+                String parameter = parts[i].trim();
+                int equals = parameter.indexOf('=');
+                if (equals > 0 && parameter.substring(0, equals).trim().equalsIgnoreCase(CONTENT_TYPE_PARAMETER)) {
+                    return forName(parameter.substring(equals + 1).trim());
+                }
+            }
+        }
+        return getDefault();
+    }
+
+    /**
+     * Returns the codec that wrote the given stream, by reading its signature.
+     *
+     * The signature is pushed back, so the stream can be given to the codec as is.
+     *
+     * @param inputStream a stream that can push back at least {@link #SIGNATURE_LENGTH} bytes
+     * @throws IOException if the stream is too short, or was not written by a known codec
+     */
+    public static Codec detect(PushbackInputStream inputStream) throws IOException {
+        byte[] signature = new byte[SIGNATURE_LENGTH];
+        int read = 0;
+        while (read < SIGNATURE_LENGTH) {
+            int count = inputStream.read(signature, read, SIGNATURE_LENGTH - read);
+            if (count < 0) {
+                throw new EOFException("Stream ended before its codec signature");
+            }
+            read += count;
+        }
+        inputStream.unread(signature);
+
+        for (Codec codec : codecs) {
+            if (codec.isSignature(signature)) {
+                return codec;
+            }
+        }
+        throw new IOException("Stream was not written by a known codec");
+    }
+
+    /**
+     * Makes the given codec available.
+     *
+     * Streams are offered to the codecs in the order they were made available, so a codec cannot take over the
+     * signatures of the built in codecs.
+     *
+     * @throws IllegalArgumentException if there already is a codec with the same name
+     */
+    public static synchronized void register(Codec codec) {
+        codecs = add(codecs, codec);
+    }
+
+    private static Codec[] add(Codec[] codecs, Codec codec) {
+        for (Codec existing : codecs) {
+            if (existing.getName().equals(codec.getName())) {
+                throw new IllegalArgumentException("There already is a codec named " + codec.getName());
+            }
+        }
+
+        Codec[] added = Arrays.copyOf(codecs, codecs.length + 1);
+        added[codecs.length] = codec;
+        return added;
+    }
+
+    private static Codec[] loadCodecs() {
+        Codec[] codecs = {JAVA, BINARY};
+        for (Codec codec : ServiceLoader.load(Codec.class, Codecs.class.getClassLoader())) {
+            codecs = add(codecs, codec);
+        }
+        return codecs;
+    }
+
+}
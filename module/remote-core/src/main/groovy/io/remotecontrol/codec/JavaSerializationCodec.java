@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.codec;
+
+import io.remotecontrol.CommandChain;
+import io.remotecontrol.SerializationUtil;
+import io.remotecontrol.result.Result;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Writes the envelope types with Java serialisation.
+ *
+ * This is the default codec, and the only one understood by receivers that predate codecs.
+ */
+public class JavaSerializationCodec implements Codec {
+
+    public static final String NAME = "java";
+
+    private static final byte[] STREAM_MAGIC = {(byte) 0xac, (byte) 0xed};
+
+    public String getName() {
+        return NAME;
+    }
+
+    public boolean isSignature(byte[] signature) {
+        return signature[0] == STREAM_MAGIC[0] && signature[1] == STREAM_MAGIC[1];
+    }
+
+    public void writeCommandChain(CommandChain<?> commandChain, OutputStream outputStream) throws IOException {
+        SerializationUtil.serialize(commandChain, outputStream);
+    }
+
+    public CommandChain<?> readCommandChain(InputStream inputStream, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+        return SerializationUtil.deserialize(CommandChain.class, inputStream, classLoader);
+    }
+
+    public void writeResult(Result result, OutputStream outputStream) throws IOException {
+        SerializationUtil.serialize(result, outputStream);
+    }
+
+    public Result readResult(InputStream inputStream, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+        return SerializationUtil.deserialize(Result.class, inputStream, classLoader);
+    }
+
+}
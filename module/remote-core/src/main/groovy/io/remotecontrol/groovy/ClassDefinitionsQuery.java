@@ -0,0 +1,28 @@
+package io.remotecontrol.groovy;
+
+import io.remotecontrol.Command;
+
+import java.util.List;
+
+/**
+ * Asks the receiver which of the given class definition digests it does not have.
+ *
+ * The receiver responds with a serialised {@code List<String>} of the missing digests.
+ *
+ * @see io.remotecontrol.groovy.client.ClassNegotiatingTransport
+ */
+public class ClassDefinitionsQuery implements Command {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> digests;
+
+    public ClassDefinitionsQuery(List<String> digests) {
+        this.digests = digests;
+    }
+
+    public List<String> getDigests() {
+        return digests;
+    }
+
+}
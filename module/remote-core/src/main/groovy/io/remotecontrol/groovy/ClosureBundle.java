@@ -0,0 +1,283 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.groovy;
+
+import io.remotecontrol.util.DigestUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed class definitions of closure classes: for each closure class, its own definition and those of its inner closures,
+ * along with their digests.
+ *
+ * A bundle is built ahead of time (see {@link io.remotecontrol.groovy.client.ClosureBundleBuilder}). Clients use it to generate commands
+ * without looking up and scanning class files, and receivers use it to have the class definitions before the first command arrives.
+ * Each definition is recorded with the name of its class and the modification time of its class file (if known), so that
+ * clients can check it against the class file of the class that is actually loaded (see
+ * {@link io.remotecontrol.groovy.client.ClosureCommandGenerator}).
+ *
+ * Bundles are written as a single file: a table of the distinct class definitions, their class names and modification
+ * times, followed by an index of closure classes by name, which reference the table.
+ */
+public class ClosureBundle {
+
+    private static final byte[] SIGNATURE = {'R', 'C', 'B'};
+    private static final int VERSION = 2;
+
+    private final Map<String, byte[]> definitions;
+    private final Map<String, Entry> entries;
+    private final Map<String, Long> lastModified;
+
+    /**
+     * @param definitions class definitions keyed by digest
+     * @param entries the entries keyed by closure class name
+     * @param lastModified the modification times of the class files of the definitions, keyed by digest, where known
+     */
+    public ClosureBundle(Map<String, byte[]> definitions, Map<String, Entry> entries, Map<String, Long> lastModified) {
+        this.definitions = Collections.unmodifiableMap(new LinkedHashMap<String, byte[]>(definitions));
+        this.entries = Collections.unmodifiableMap(new LinkedHashMap<String, Entry>(entries));
+        this.lastModified = Collections.unmodifiableMap(new HashMap<String, Long>(lastModified));
+    }
+
+    /**
+     * @param definitions class definitions keyed by digest
+     * @param entries the entries keyed by closure class name
+     */
+    public ClosureBundle(Map<String, byte[]> definitions, Map<String, Entry> entries) {
+        this(definitions, entries, Collections.<String, Long>emptyMap());
+    }
+
+    /**
+     * Returns the entry for the closure class with the given name, or null if this bundle does not contain it.
+     */
+    public Entry getEntry(String className) {
+        return entries.get(className);
+    }
+
+    /**
+     * The entries, keyed by closure class name.
+     */
+    public Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * All of the class definitions, keyed by digest.
+     */
+    public Map<String, byte[]> getDefinitions() {
+        return definitions;
+    }
+
+    /**
+     * The modification time of the class file that the definition with the given digest was read from, or 0 if it is not known.
+     */
+    public long getLastModified(String digest) {
+        Long time = lastModified.get(digest);
+        return time == null ? 0 : time;
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        output.write(SIGNATURE);
+        output.writeByte(VERSION);
+
+        Map<String, String> classNames = new HashMap<String, String>();
+        for (Entry entry : entries.values()) {
+            classNames.put(entry.getRootDigest(), entry.getClassName());
+            for (int i = 0; i < entry.getSupportDigests().size(); ++i) {
+                classNames.put(entry.getSupportDigests().get(i), entry.getSupportClassNames().get(i));
+            }
+        }
+
+        Map<String, Integer> indexes = new LinkedHashMap<String, Integer>();
+        output.writeInt(definitions.size());
+        for (Map.Entry<String, byte[]> definition : definitions.entrySet()) {
+            String className = classNames.get(definition.getKey());
+            if (className == null) {
+                throw new IllegalStateException("No entry refers to the class definition with digest " + definition.getKey());
+            }
+            indexes.put(definition.getKey(), indexes.size());
+            output.writeUTF(definition.getKey());
+            output.writeUTF(className);
+            output.writeLong(getLastModified(definition.getKey()));
+            output.writeInt(definition.getValue().length);
+            output.write(definition.getValue());
+        }
+
+        output.writeInt(entries.size());
+        for (Entry entry : entries.values()) {
+            output.writeUTF(entry.getClassName());
+            output.writeInt(indexes.get(entry.getRootDigest()));
+            output.writeInt(entry.getSupportDigests().size());
+            for (String digest : entry.getSupportDigests()) {
+                output.writeInt(indexes.get(digest));
+            }
+        }
+        output.flush();
+    }
+
+    public void write(File file) throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            write(outputStream);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    public static ClosureBundle read(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream));
+        byte[] signature = new byte[SIGNATURE.length];
+        input.readFully(signature);
+        if (signature[0] != SIGNATURE[0] || signature[1] != SIGNATURE[1] || signature[2] != SIGNATURE[2]) {
+            throw new IOException("Not a closure bundle");
+        }
+        int version = input.readByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported closure bundle version: " + version);
+        }
+
+        int definitionCount = input.readInt();
+        List<String> digests = new ArrayList<String>(definitionCount);
+        Map<String, byte[]> definitions = new LinkedHashMap<String, byte[]>();
+        Map<String, String> classNames = new HashMap<String, String>();
+        Map<String, Long> lastModified = new HashMap<String, Long>();
+        for (int i = 0; i < definitionCount; ++i) {
+            String digest = input.readUTF();
+            String className = input.readUTF();
+            if (version > 1) {
+                lastModified.put(digest, input.readLong());
+            }
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            digests.add(digest);
+            definitions.put(digest, bytes);
+            classNames.put(digest, className);
+        }
+
+        int entryCount = input.readInt();
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        for (int i = 0; i < entryCount; ++i) {
+            String className = input.readUTF();
+            String rootDigest = digests.get(input.readInt());
+            int supportCount = input.readInt();
+            List<String> supportDigests = new ArrayList<String>(supportCount);
+            List<byte[]> supports = new ArrayList<byte[]>(supportCount);
+            List<String> supportClassNames = new ArrayList<String>(supportCount);
+            for (int j = 0; j < supportCount; ++j) {
+                String digest = digests.get(input.readInt());
+                supportDigests.add(digest);
+                supports.add(definitions.get(digest));
+                supportClassNames.add(classNames.get(digest));
+            }
+            entries.put(className, new Entry(className, definitions.get(rootDigest), rootDigest, supports, supportDigests, supportClassNames));
+        }
+
+        return new ClosureBundle(definitions, entries, lastModified);
+    }
+
+    public static ClosureBundle read(File file) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            return read(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * The class definitions of a closure class.
+     */
+    public static class Entry {
+
+        private final String className;
+        private final byte[] root;
+        private final String rootDigest;
+        private final List<byte[]> supports;
+        private final List<String> supportDigests;
+        private final List<String> supportClassNames;
+
+        public Entry(String className, byte[] root, String rootDigest, List<byte[]> supports, List<String> supportDigests, List<String> supportClassNames) {
+            this.className = className;
+            this.root = root;
+            this.rootDigest = rootDigest;
+            this.supports = Collections.unmodifiableList(new ArrayList<byte[]>(supports));
+            this.supportDigests = Collections.unmodifiableList(new ArrayList<String>(supportDigests));
+            this.supportClassNames = Collections.unmodifiableList(new ArrayList<String>(supportClassNames));
+        }
+
+        /**
+         * Creates an entry for the given definitions, computing their digests.
+         *
+         * @param supports the definitions of the supporting classes, keyed by class name
+         */
+        public Entry(String className, byte[] root, Map<String, byte[]> supports) {
+            this(className, root, DigestUtil.digest(root), new ArrayList<byte[]>(supports.values()), digestsOf(supports.values()), new ArrayList<String>(supports.keySet()));
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public byte[] getRoot() {
+            return root;
+        }
+
+        public String getRootDigest() {
+            return rootDigest;
+        }
+
+        public List<byte[]> getSupports() {
+            return supports;
+        }
+
+        public List<String> getSupportDigests() {
+            return supportDigests;
+        }
+
+        /**
+         * The names of the supporting classes, in the same order as their definitions.
+         */
+        public List<String> getSupportClassNames() {
+            return supportClassNames;
+        }
+
+        private static List<String> digestsOf(Collection<byte[]> definitions) {
+            List<String> digests = new ArrayList<String>(definitions.size());
+            for (byte[] definition : definitions) {
+                digests.add(DigestUtil.digest(definition));
+            }
+            return digests;
+        }
+    }
+
+}
@@ -2,8 +2,17 @@ package io.remotecontrol.groovy;
 
 import io.remotecontrol.Command;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * A serialised closure, along with the definitions of its class and any supporting classes.
+ *
+ * Commands generated by current clients also carry the digests of the class definitions. This allows the class
+ * definitions to be omitted (see {@link #withoutClassDefinitions()}) when the receiver is known to have them already.
+ */
 public class ClosureCommand implements Command {
 
     private static final long serialVersionUID = 1L;
@@ -11,17 +20,32 @@ public class ClosureCommand implements Command {
     private final byte[] instance;
     private final byte[] root;
     private final Collection<byte[]> supports;
+    private final String rootDigest;
+    private final List<String> supportDigests;
 
     public ClosureCommand(byte[] instance, byte[] root, Collection<byte[]> supports) {
+        this(instance, root, supports, null, null);
+    }
+
+    /**
+     * @param rootDigest the digest of the root class definition
+     * @param supportDigests the digests of the supporting class definitions, in the same order as supports
+     */
+    public ClosureCommand(byte[] instance, byte[] root, Collection<byte[]> supports, String rootDigest, List<String> supportDigests) {
         this.instance = instance;
         this.root = root;
         this.supports = supports;
+        this.rootDigest = rootDigest;
+        this.supportDigests = supportDigests;
     }
 
     public byte[] getInstance() {
         return instance;
     }
 
+    /**
+     * The definition of the closure class, or {@code null} if the class definitions have been omitted.
+     */
     public byte[] getRoot() {
         return root;
     }
@@ -29,4 +53,59 @@ public class ClosureCommand implements Command {
     public Collection<byte[]> getSupports() {
         return supports;
     }
+
+    /**
+     * The digest of the closure class definition, or {@code null} if this command was created without digests.
+     */
+    public String getRootDigest() {
+        return rootDigest;
+    }
+
+    /**
+     * The digests of the supporting class definitions, or {@code null} if this command was created without digests.
+     */
+    public List<String> getSupportDigests() {
+        return supportDigests;
+    }
+
+    public boolean hasDigests() {
+        return rootDigest != null && supportDigests != null;
+    }
+
+    public boolean hasClassDefinitions() {
+        return root != null;
+    }
+
+    /**
+     * The digests of the root and supporting class definitions.
+     */
+    public List<String> getClassDigests() {
+        if (!hasDigests()) {
+            throw new IllegalStateException("command does not have class digests");
+        }
+
+        List<String> digests = new ArrayList<String>(supportDigests.size() + 1);
+        digests.add(rootDigest);
+        digests.addAll(supportDigests);
+        return digests;
+    }
+
+    /**
+     * Creates a copy of this command without the class definitions, which must be resolved from their digests before execution.
+     */
+    public ClosureCommand withoutClassDefinitions() {
+        if (!hasDigests()) {
+            throw new IllegalStateException("cannot omit the class definitions of a command without digests");
+        }
+
+        return new ClosureCommand(instance, null, Collections.<byte[]>emptyList(), rootDigest, supportDigests);
+    }
+
+    /**
+     * Creates a copy of this command with the given class definitions, which must correspond to the digests of this command.
+     */
+    public ClosureCommand withClassDefinitions(byte[] root, Collection<byte[]> supports) {
+        return new ClosureCommand(instance, root, supports, rootDigest, supportDigests);
+    }
+
 }
@@ -1,5 +1,8 @@
 package io.remotecontrol.groovy;
 
+import io.remotecontrol.codec.Codec;
+import io.remotecontrol.codec.Codecs;
+
 public enum ContentType {
 
     COMMAND("application/groovy-remote-control-command"),
@@ -15,4 +18,28 @@ public enum ContentType {
         return value;
     }
 
+    /**
+     * The value of this content type for content written with the given codec.
+     *
+     * Content written with the default codec has no codec parameter, so that receivers that predate codecs accept it.
+     */
+    public final String getValue(Codec codec) {
+        if (codec == Codecs.getDefault()) {
+            return value;
+        }
+        return value + "; " + Codecs.CONTENT_TYPE_PARAMETER + "=" + codec.getName();
+    }
+
+    /**
+     * Returns whether the given content type value is this content type, with or without parameters.
+     */
+    public final boolean matches(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int semicolon = contentType.indexOf(';');
+        String mediaType = semicolon < 0 ? contentType : contentType.substring(0, semicolon);
+        return mediaType.trim().equalsIgnoreCase(value);
+    }
+
 }
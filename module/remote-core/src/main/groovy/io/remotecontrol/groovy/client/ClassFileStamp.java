@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.remotecontrol.groovy.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.jar.JarEntry;
+
+/**
+ * The modification time and length of a class file, read without reading the class file itself.
+ *
+ * Only class files in directories and jar/zip files have a stamp.
+ */
+class ClassFileStamp {
+
+    private final long lastModified;
+    private final long length;
+
+    private ClassFileStamp(long lastModified, long length) {
+        this.lastModified = lastModified;
+        this.length = length;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the stamp of the class file of the named class that the loader finds, or null if it cannot be found or has no stamp.
+     */
+    static ClassFileStamp of(ClassLoader classLoader, String className) {
+        URL classFileResource = classLoader.getResource(className.replace(".", "/") + ".class");
+        if (classFileResource == null) {
+            return null;
+        }
+
+        try {
+            if (classFileResource.getProtocol().equals("file")) {
+                File file = new File(classFileResource.toURI());
+                return file.isFile() ? new ClassFileStamp(file.lastModified(), file.length()) : null;
+            }
+
+            if (classFileResource.getProtocol().equals("jar")) {
+                URLConnection connection = classFileResource.openConnection();
+                JarEntry entry = ((JarURLConnection) connection).getJarEntry();
+                return entry == null || entry.getTime() < 0 ? null : new ClassFileStamp(entry.getTime(), entry.getSize());
+            }
+        } catch (URISyntaxException e) {
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+
+        return null;
+    }
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.groovy.client;
+
+import io.remotecontrol.CommandChain;
+import io.remotecontrol.RemoteControlException;
+import io.remotecontrol.client.AsyncTransport;
+import io.remotecontrol.client.Transport;
+import io.remotecontrol.groovy.ClassDefinitionsQuery;
+import io.remotecontrol.groovy.ClosureCommand;
+import io.remotecontrol.result.MissingClassDefinitionsResult;
+import io.remotecontrol.result.Result;
+import io.remotecontrol.result.SerializedResult;
+import io.remotecontrol.result.ThrownResult;
+import io.remotecontrol.util.TransformingFuture;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wraps a transport so that class definitions are only sent to the receiver when it does not already have them.
+ *
+ * Before sending a chain of closure commands whose class digests have not been seen before, the digests are sent to the
+ * receiver which replies with the ones it is missing. Commands whose classes the receiver has are then sent without
+ * their class definitions, so that in the steady state only the serialised closure instances are transmitted.
+ *
+ * If the receiver has lost definitions it was thought to have (e.g. it was restarted), it executes nothing and responds
+ * with the digests it is missing, and the chain is sent again in full. If the receiver answers the query with anything but the
+ * missing digests, or fails it naming the query type (i.e. it predates this protocol), then all subsequent chains are sent in full
+ * through the wrapped transport. If the query fails in any other way (e.g. a timeout), only that chain is sent in full and the
+ * next chain queries again. Receivers that predate this protocol do not always fail in a way that names the query type (e.g. an
+ * HTTP receiver that cannot deserialise the query fails the request), so after {@link #getMaxQueryFailures()} consecutive queries
+ * have failed without an answer, the receiver is also taken to predate it.
+ */
+public class ClassNegotiatingTransport implements AsyncTransport {
+
+    public static final int DEFAULT_MAX_QUERY_FAILURES = 3;
+
+    private final Transport delegate;
+    private final Set<String> knownDigests = Collections.synchronizedSet(new HashSet<String>());
+    private final AtomicInteger queryFailures = new AtomicInteger();
+    private volatile int maxQueryFailures = DEFAULT_MAX_QUERY_FAILURES;
+    private volatile boolean negotiationUnsupported;
+
+    public ClassNegotiatingTransport(Transport delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Result send(CommandChain<?> commandChain) throws IOException {
+        return complete(commandChain, delegate.send(prepare(commandChain)));
+    }
+
+    /**
+     * Sends the chain asynchronously if the wrapped transport supports it.
+     *
+     * Any query for missing definitions is made synchronously, before the chain is sent.
+     */
+    @Override
+    public Future<Result> sendAsync(final CommandChain<?> commandChain) throws IOException {
+        if (!(delegate instanceof AsyncTransport)) {
+            FutureTask<Result> task = new FutureTask<Result>(new Callable<Result>() {
+                @Override
+                public Result call() throws Exception {
+                    return send(commandChain);
+                }
+            });
+            task.run();
+            return task;
+        }
+
+        return new TransformingFuture<Result, Result>(((AsyncTransport) delegate).sendAsync(prepare(commandChain))) {
+            @Override
+            protected Result transform(Result result) throws IOException {
+                return complete(commandChain, result);
+            }
+        };
+    }
+
+    /**
+     * Returns the chain to send, without any class definitions that the receiver is known to have.
+     */
+    private CommandChain<?> prepare(CommandChain<?> commandChain) {
+        if (negotiationUnsupported || !commandChain.getType().equals(ClosureCommand.class)) {
+            return commandChain;
+        }
+
+        @SuppressWarnings("unchecked")
+        CommandChain<ClosureCommand> closureCommandChain = (CommandChain<ClosureCommand>) commandChain;
+
+        Set<String> unknown = new LinkedHashSet<String>();
+        for (ClosureCommand command : closureCommandChain.getCommands()) {
+            if (command.hasDigests()) {
+                for (String digest : command.getClassDigests()) {
+                    if (!knownDigests.contains(digest)) {
+                        unknown.add(digest);
+                    }
+                }
+            }
+        }
+
+        if (!unknown.isEmpty()) {
+            List<String> missing;
+            try {
+                missing = query(new ArrayList<String>(unknown));
+            } catch (IOException e) {
+                queryFailed();
+                return commandChain;
+            } catch (RuntimeException e) {
+                // not an answer, so the receiver may well support negotiation once the failure has passed
+                queryFailed();
+                return commandChain;
+            }
+
+            if (missing == null) {
+                negotiationUnsupported = true;
+                return commandChain;
+            }
+
+            queryFailures.set(0);
+
+            unknown.removeAll(missing);
+            knownDigests.addAll(unknown);
+        }
+
+        return omitKnownClassDefinitions(closureCommandChain);
+    }
+
+    private void queryFailed() {
+        if (queryFailures.incrementAndGet() >= maxQueryFailures) {
+            negotiationUnsupported = true;
+        }
+    }
+
+    /**
+     * Resends the chain in full if the receiver was missing definitions, and records the definitions the receiver now has.
+     */
+    private Result complete(CommandChain<?> commandChain, Result result) throws IOException {
+        Result completed = result;
+        if (completed instanceof MissingClassDefinitionsResult) {
+            knownDigests.removeAll(((MissingClassDefinitionsResult) completed).getDigests());
+            completed = delegate.send(commandChain);
+        }
+
+        if (!(completed instanceof MissingClassDefinitionsResult) && commandChain.getType().equals(ClosureCommand.class)) {
+            // The receiver has now seen all of the definitions
+            for (Object command : commandChain.getCommands()) {
+                ClosureCommand closureCommand = (ClosureCommand) command;
+                if (closureCommand.hasDigests()) {
+                    knownDigests.addAll(closureCommand.getClassDigests());
+                }
+            }
+        }
+
+        return completed;
+    }
+
+    /**
+     * Whether the receiver has been found to not support class negotiation, in which case chains are always sent in full.
+     */
+    public boolean isNegotiationUnsupported() {
+        return negotiationUnsupported;
+    }
+
+    /**
+     * The number of consecutive queries that can fail without an answer before the receiver is taken to not support class
+     * negotiation. Defaults to {@link #DEFAULT_MAX_QUERY_FAILURES}.
+     */
+    public int getMaxQueryFailures() {
+        return maxQueryFailures;
+    }
+
+    public void setMaxQueryFailures(int maxQueryFailures) {
+        if (maxQueryFailures < 1) {
+            throw new IllegalArgumentException("maxQueryFailures must be at least 1");
+        }
+        this.maxQueryFailures = maxQueryFailures;
+    }
+
+    /**
+     * Forgets which class definitions the receiver is known to have, and whether it supports class negotiation.
+     */
+    public void reset() {
+        knownDigests.clear();
+        queryFailures.set(0);
+        negotiationUnsupported = false;
+    }
+
+    /**
+     * Asks the receiver which of the given digests it is missing.
+     *
+     * @return the missing digests, or null if the receiver does not understand the query
+     * @throws IOException if the query could not be sent or answered, without showing whether the receiver understands it
+     */
+    protected List<String> query(List<String> digests) throws IOException {
+        Result result;
+        try {
+            result = delegate.send(CommandChain.of(ClassDefinitionsQuery.class, new ClassDefinitionsQuery(digests)));
+        } catch (RuntimeException e) {
+            if (namesQueryType(e)) {
+                return null;
+            }
+            throw e;
+        }
+
+        if (result instanceof ThrownResult) {
+            Throwable thrown = ((ThrownResult) result).deserialize(getClass().getClassLoader());
+            if (namesQueryType(thrown)) {
+                return null;
+            }
+            throw new RemoteControlException("The receiver failed to answer the class definitions query", thrown);
+        }
+
+        if (result instanceof SerializedResult) {
+            Object missing;
+            try {
+                missing = ((SerializedResult) result).deserialize(getClass().getClassLoader());
+            } catch (RuntimeException e) {
+                return null;
+            }
+
+            if (missing instanceof List) {
+                @SuppressWarnings("unchecked")
+                List<String> cast = (List<String>) missing;
+                return cast;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Whether the failure, or any of its causes, names the query type (e.g. the receiver does not have the class, or has no runner for it).
+     */
+    private static boolean namesQueryType(Throwable throwable) {
+        for (Throwable current = throwable; current != null; current = current.getCause() == current ? null : current.getCause()) {
+            String message = current.getMessage();
+            if (message != null && message.contains(ClassDefinitionsQuery.class.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected CommandChain<ClosureCommand> omitKnownClassDefinitions(CommandChain<ClosureCommand> commandChain) {
+        List<ClosureCommand> commands = new ArrayList<ClosureCommand>(commandChain.getCommands().size());
+        for (ClosureCommand command : commandChain.getCommands()) {
+            if (command.hasDigests() && command.hasClassDefinitions() && knownDigests.containsAll(command.getClassDigests())) {
+                commands.add(command.withoutClassDefinitions());
+            } else {
+                commands.add(command);
+            }
+        }
+        return commandChain.withCommands(commands);
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.remotecontrol.groovy.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An index of the inner class files available in class path roots (directories and jar/zip files).
+ *
+ * Inner class file names are grouped by package and then by the name of their top level class, so that finding the
+ * inner classes of a class is a couple of map lookups instead of a scan of the root. Each root is indexed lazily, the
+ * first time it is asked about. A jar is indexed in one pass and indexed again if its modification time or length changes.
+ * A package directory is listed once and listed again if its modification time changes.
+ *
+ * Instances are safe to share between threads.
+ */
+public class ClassPathIndex {
+
+    private static final String CLASS_FILE_EXTENSION = ".class";
+
+    private final Map<File, ArchiveIndex> archives = new HashMap<File, ArchiveIndex>();
+    private final Map<File, DirectoryIndex> directories = new HashMap<File, DirectoryIndex>();
+
+    /**
+     * Returns the names of the inner class files of the given top level class in the given package of the given root.
+     *
+     * @param root a directory or jar/zip file class path root
+     * @param packageDirPath the package as a path (e.g. "io/remotecontrol"), or an empty string for the default package
+     * @param topLevelClassName the simple name of the top level class
+     * @return the file names of the inner classes, relative to the package
+     */
+    public List<String> getInnerClassFileNames(File root, String packageDirPath, String topLevelClassName) throws IOException {
+        Map<String, List<String>> packageIndex;
+        if (root.isDirectory()) {
+            packageIndex = getDirectoryIndex(packageDirPath.length() == 0 ? root : new File(root, packageDirPath));
+        } else {
+            packageIndex = getArchiveIndex(root).get(packageDirPath);
+        }
+
+        if (packageIndex == null) {
+            return Collections.emptyList();
+        }
+
+        List<String> fileNames = packageIndex.get(topLevelClassName);
+        return fileNames == null ? Collections.<String>emptyList() : fileNames;
+    }
+
+    /**
+     * Discards everything that has been indexed.
+     */
+    public synchronized void clear() {
+        archives.clear();
+        directories.clear();
+    }
+
+    private synchronized Map<String, List<String>> getDirectoryIndex(File packageDir) {
+        long lastModified = packageDir.lastModified();
+        DirectoryIndex index = directories.get(packageDir);
+        if (index == null || index.lastModified != lastModified) {
+            index = new DirectoryIndex(lastModified);
+            String[] fileNames = packageDir.list();
+            if (fileNames != null) {
+                for (String fileName : fileNames) {
+                    addInnerClassFileName(index.classes, fileName);
+                }
+            }
+            directories.put(packageDir, index);
+        }
+
+        return index.classes;
+    }
+
+    private synchronized Map<String, Map<String, List<String>>> getArchiveIndex(File archive) throws IOException {
+        long lastModified = archive.lastModified();
+        long length = archive.length();
+        ArchiveIndex index = archives.get(archive);
+        if (index == null || index.lastModified != lastModified || index.length != length) {
+            index = new ArchiveIndex(lastModified, length);
+            ZipFile zipFile = new ZipFile(archive);
+            try {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    int lastSlash = name.lastIndexOf('/');
+                    String packageDirPath = lastSlash < 0 ? "" : name.substring(0, lastSlash);
+                    Map<String, List<String>> packageIndex = index.packages.get(packageDirPath);
+                    if (packageIndex == null) {
+                        packageIndex = new HashMap<String, List<String>>();
+                        index.packages.put(packageDirPath, packageIndex);
+                    }
+                    addInnerClassFileName(packageIndex, name.substring(lastSlash + 1));
+                }
+            } finally {
+                zipFile.close();
+            }
+            archives.put(archive, index);
+        }
+
+        return index.packages;
+    }
+
+    private static void addInnerClassFileName(Map<String, List<String>> packageIndex, String fileName) {
+        int firstDollar = fileName.indexOf('$');
+        if (firstDollar > 0 && fileName.endsWith(CLASS_FILE_EXTENSION)) {
+            String topLevelClassName = fileName.substring(0, firstDollar);
+            List<String> fileNames = packageIndex.get(topLevelClassName);
+            if (fileNames == null) {
+                fileNames = new ArrayList<String>();
+                packageIndex.put(topLevelClassName, fileNames);
+            }
+            fileNames.add(fileName);
+        }
+    }
+
+    private static class DirectoryIndex {
+        private final long lastModified;
+        private final Map<String, List<String>> classes = new HashMap<String, List<String>>();
+
+        DirectoryIndex(long lastModified) {
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static class ArchiveIndex {
+        private final long lastModified;
+        private final long length;
+        private final Map<String, Map<String, List<String>>> packages = new HashMap<String, Map<String, List<String>>>();
+
+        ArchiveIndex(long lastModified, long length) {
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.groovy.client;
+
+import groovy.lang.Closure;
+import io.remotecontrol.groovy.ClosureBundle;
+import io.remotecontrol.util.UnexpectedIOException;
+import org.codehaus.groovy.runtime.DefaultGroovyMethods;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Builds a {@link ClosureBundle} of closure classes, typically as part of a build or at application startup.
+ *
+ * The class definitions are found the same way that {@link ClosureCommandGenerator} finds them, so the loader must be
+ * able to load the closure classes and their class files must be in the file system roots of a URLClassLoader hierarchy.
+ * The modification time of each class file is recorded too, so that clients can tell that a class file has not changed
+ * without reading it.
+ *
+ * The bundle can be written to a file from the command line, with the output file followed by the class path roots
+ * (directories or jars) to scan for closure classes:
+ *
+ * <pre>
+ * java io.remotecontrol.groovy.client.ClosureBundleBuilder closures.bundle build/classes/main
+ * </pre>
+ */
+public class ClosureBundleBuilder {
+
+    private static final String CLASS_FILE_EXTENSION = ".class";
+
+    private final ClassLoader classLoader;
+    private final Map<String, byte[]> definitions = new LinkedHashMap<String, byte[]>();
+    private final Map<String, ClosureBundle.Entry> entries = new LinkedHashMap<String, ClosureBundle.Entry>();
+    private final Map<String, Long> lastModified = new HashMap<String, Long>();
+    private InnerClosureClassDefinitionsFinder innerClosureClassDefinitionsFinder;
+
+    public ClosureBundleBuilder(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Adds the definitions of the given closure class, and those of its inner closures.
+     */
+    public ClosureBundleBuilder add(Class<? extends Closure> closureClass) {
+        if (entries.containsKey(closureClass.getName())) {
+            return this;
+        }
+
+        byte[] root = getClassBytes(closureClass);
+        Map<String, byte[]> supports;
+        try {
+            supports = getInnerClosureClassDefinitionsFinder().findByClassName(closureClass);
+        } catch (IOException e) {
+            throw new UnexpectedIOException("cannnot find inner closures of: " + closureClass.getName(), e);
+        }
+
+        ClosureBundle.Entry entry = new ClosureBundle.Entry(closureClass.getName(), root, supports);
+        addDefinition(entry.getClassName(), entry.getRootDigest(), root);
+        for (int i = 0; i < entry.getSupports().size(); ++i) {
+            addDefinition(entry.getSupportClassNames().get(i), entry.getSupportDigests().get(i), entry.getSupports().get(i));
+        }
+        entries.put(closureClass.getName(), entry);
+        return this;
+    }
+
+    private void addDefinition(String className, String digest, byte[] definition) {
+        definitions.put(digest, definition);
+        ClassFileStamp stamp = ClassFileStamp.of(classLoader, className);
+        if (stamp != null && stamp.getLength() == definition.length) {
+            lastModified.put(digest, stamp.getLastModified());
+        }
+    }
+
+    /**
+     * Adds all of the top level closure classes that have class files in the given directory or jar/zip file.
+     *
+     * Closures that are defined inside other closures are not added as entries of their own, as they are included in the
+     * entries of the closures that they are defined in. Classes that cannot be loaded are skipped.
+     */
+    public ClosureBundleBuilder addClosuresIn(File root) throws IOException {
+        for (String className : findClassNames(root)) {
+            Class<?> clazz;
+            try {
+                clazz = Class.forName(className, false, classLoader);
+            } catch (ClassNotFoundException e) {
+                continue;
+            } catch (LinkageError e) {
+                continue;
+            }
+
+            if (Closure.class.isAssignableFrom(clazz) && !clazz.equals(Closure.class) && !isInnerClosure(clazz)) {
+                add(clazz.asSubclass(Closure.class));
+            }
+        }
+        return this;
+    }
+
+    public ClosureBundle build() {
+        return new ClosureBundle(definitions, entries, lastModified);
+    }
+
+    /**
+     * Scans class path roots for closure classes and writes a bundle of them.
+     *
+     * @param args the file to write the bundle to, followed by the directories and jar files to scan
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: ClosureBundleBuilder <output file> <class path root>...");
+            System.exit(1);
+        }
+
+        URL[] urls = new URL[args.length - 1];
+        for (int i = 1; i < args.length; ++i) {
+            urls[i - 1] = new File(args[i]).toURI().toURL();
+        }
+
+        ClosureBundleBuilder builder = new ClosureBundleBuilder(new URLClassLoader(urls, ClosureBundleBuilder.class.getClassLoader()));
+        for (int i = 1; i < args.length; ++i) {
+            builder.addClosuresIn(new File(args[i]));
+        }
+
+        ClosureBundle bundle = builder.build();
+        bundle.write(new File(args[0]));
+        System.out.println("Wrote " + bundle.getEntries().size() + " closure classes (" + bundle.getDefinitions().size() + " class definitions) to " + args[0]);
+    }
+
+    private static boolean isInnerClosure(Class<?> clazz) {
+        Class<?> enclosingClass;
+        try {
+            enclosingClass = clazz.getEnclosingClass();
+        } catch (LinkageError e) {
+            return false;
+        }
+        return enclosingClass != null && Closure.class.isAssignableFrom(enclosingClass);
+    }
+
+    private byte[] getClassBytes(Class<? extends Closure> closureClass) {
+        URL classFileResource = classLoader.getResource(closureClass.getName().replace(".", "/") + CLASS_FILE_EXTENSION);
+        if (classFileResource == null) {
+            throw new IllegalStateException("Could not find class file for class " + String.valueOf(closureClass));
+        }
+
+        try {
+            return DefaultGroovyMethods.getBytes(classFileResource);
+        } catch (IOException e) {
+            throw new UnexpectedIOException("reading class files", e);
+        }
+    }
+
+    private InnerClosureClassDefinitionsFinder getInnerClosureClassDefinitionsFinder() {
+        if (innerClosureClassDefinitionsFinder == null) {
+            innerClosureClassDefinitionsFinder = new InnerClosureClassDefinitionsFinder(classLoader);
+        }
+        return innerClosureClassDefinitionsFinder;
+    }
+
+    private static List<String> findClassNames(File root) throws IOException {
+        List<String> classNames = new ArrayList<String>();
+        if (root.isDirectory()) {
+            addClassNames(root, "", classNames);
+        } else {
+            ZipFile zipFile = new ZipFile(root);
+            try {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    if (name.endsWith(CLASS_FILE_EXTENSION)) {
+                        classNames.add(toClassName(name));
+                    }
+                }
+            } finally {
+                zipFile.close();
+            }
+        }
+        return classNames;
+    }
+
+    private static void addClassNames(File dir, String path, List<String> classNames) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = path + file.getName();
+            if (file.isDirectory()) {
+                addClassNames(file, name + "/", classNames);
+            } else if (name.endsWith(CLASS_FILE_EXTENSION)) {
+                classNames.add(toClassName(name));
+            }
+        }
+    }
+
+    private static String toClassName(String classFilePath) {
+        return classFilePath.substring(0, classFilePath.length() - CLASS_FILE_EXTENSION.length()).replace('/', '.');
+    }
+
+}
@@ -20,31 +20,65 @@ import groovy.lang.Closure;
 import io.remotecontrol.SerializationUtil;
 import io.remotecontrol.UnserializableCommandException;
 import io.remotecontrol.client.CommandGenerator;
+import io.remotecontrol.groovy.ClosureBundle;
 import io.remotecontrol.groovy.ClosureCommand;
 import io.remotecontrol.groovy.ClosureUtil;
+import io.remotecontrol.metrics.Metrics;
+import io.remotecontrol.metrics.MetricsListener;
+import io.remotecontrol.metrics.Phase;
+import io.remotecontrol.util.DigestUtil;
+import io.remotecontrol.util.IoUtil;
 import io.remotecontrol.util.UnexpectedIOException;
 import org.codehaus.groovy.runtime.CurriedClosure;
 import org.codehaus.groovy.runtime.DefaultGroovyMethods;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.NotSerializableException;
 import java.net.URL;
-import java.util.LinkedList;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * Generates command objects from closures.
+ *
+ * The class definition bytes of closure classes, and their digests, are memoized (weakly keyed by class), as they
+ * cannot change during the life of the generator. Only the closure instance is serialised for each generated command.
+ *
+ * If given a {@link ClosureBundle}, the definitions of the closure classes in it are taken from the bundle instead of
+ * being read from the class files and searched for inner closures. Each entry is first checked against the class files of
+ * the root and supporting classes, and the class files are used instead if they do not match (i.e. the bundle was built
+ * before the closures were recompiled). A class file whose modification time and size are those recorded in the bundle is
+ * taken to match without being read; otherwise it is read and compared by size and digest.
  */
 public class ClosureCommandGenerator implements CommandGenerator<RawClosureCommand, ClosureCommand> {
 
     private final ClassLoader classLoader;
+    private final ClosureBundle bundle;
+
+    private final Map<Class<?>, ClosureClassDefinitions> definitionsCache = Collections.synchronizedMap(new WeakHashMap<Class<?>, ClosureClassDefinitions>());
+    private InnerClosureClassDefinitionsFinder innerClosureClassDefinitionsFinder;
 
     public ClosureCommandGenerator() {
         this(Thread.currentThread().getContextClassLoader());
     }
 
     public ClosureCommandGenerator(ClassLoader classLoader) {
+        this(classLoader, null);
+    }
+
+    /**
+     * @param classLoader the loader to read the class files of closure classes that are not in the bundle from
+     * @param bundle precomputed class definitions, may be null
+     */
+    public ClosureCommandGenerator(ClassLoader classLoader, ClosureBundle bundle) {
         this.classLoader = classLoader;
+        this.bundle = bundle;
     }
 
     @Override
@@ -56,25 +90,34 @@ public class ClosureCommandGenerator implements CommandGenerator<RawClosureComma
      * For the given closure, generate a command object.
      */
     public ClosureCommand generate(RawClosureCommand rawClosureCommand) {
+        MetricsListener metrics = Metrics.getListener();
+        long start = System.nanoTime();
         byte[] bytes;
-        byte[] classBytes;
-        List<byte[]> supports;
         Closure<?> cloned = (Closure<?>) rawClosureCommand.getRoot().clone();
         Closure<?> root = getRootClosure(cloned);
         bytes = serializeInstance((Closure) cloned, root);
-        classBytes = getClassBytes(root.getClass());
+        ClosureClassDefinitions rootDefinitions = getClosureClassDefinitions(root.getClass());
 
-        supports = new LinkedList<byte[]>(getSupportingClassesBytes(root.getClass()));
+        // Used closures often share classes with the root closure (or each other), so each distinct class is only included once
+        Map<String, byte[]> supports = new LinkedHashMap<String, byte[]>();
+        supports.put(rootDefinitions.digest, rootDefinitions.bytes);
+        rootDefinitions.addSupportsTo(supports);
 
         List<Closure<?>> used = rawClosureCommand.getUsed();
         if (!used.isEmpty()) {
             for (Closure usedClosure : used) {
-                supports.add(getClassBytes(usedClosure.getClass()));
-                supports.addAll(getSupportingClassesBytes(usedClosure.getClass()));
+                ClosureClassDefinitions usedDefinitions = getClosureClassDefinitions(usedClosure.getClass());
+                if (!supports.containsKey(usedDefinitions.digest)) {
+                    supports.put(usedDefinitions.digest, usedDefinitions.bytes);
+                }
+                usedDefinitions.addSupportsTo(supports);
             }
         }
+        supports.remove(rootDefinitions.digest);
 
-        return new ClosureCommand(bytes, classBytes, supports);
+        metrics.time(Phase.GENERATE, System.nanoTime() - start);
+        metrics.bytes(Phase.GENERATE, bytes.length);
+        return new ClosureCommand(bytes, rootDefinitions.bytes, new ArrayList<byte[]>(supports.values()), rootDefinitions.digest, new ArrayList<String>(supports.keySet()));
     }
 
     /**
@@ -91,6 +134,67 @@ public class ClosureCommandGenerator implements CommandGenerator<RawClosureComma
         return root;
     }
 
+    private ClosureClassDefinitions getClosureClassDefinitions(Class<? extends Closure> closureClass) {
+        ClosureClassDefinitions definitions = definitionsCache.get(closureClass);
+        if (definitions == null) {
+            ClosureBundle.Entry entry = bundle == null ? null : bundle.getEntry(closureClass.getName());
+            if (entry == null || !isCurrent(entry)) {
+                definitions = new ClosureClassDefinitions(getClassBytes(closureClass), getSupportingClassesBytes(closureClass));
+            } else {
+                definitions = new ClosureClassDefinitions(entry.getRoot(), entry.getRootDigest(), entry.getSupports(), entry.getSupportDigests());
+            }
+            definitionsCache.put(closureClass, definitions);
+        }
+        return definitions;
+    }
+
+    /**
+     * Whether the definitions of the bundle entry are those of the class files that the loader finds.
+     */
+    private boolean isCurrent(ClosureBundle.Entry entry) {
+        if (!matchesClassFile(entry.getClassName(), entry.getRoot(), entry.getRootDigest())) {
+            return false;
+        }
+        for (int i = 0; i < entry.getSupports().size(); ++i) {
+            if (!matchesClassFile(entry.getSupportClassNames().get(i), entry.getSupports().get(i), entry.getSupportDigests().get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matchesClassFile(String className, byte[] definition, String digest) {
+        long lastModified = bundle.getLastModified(digest);
+        if (lastModified != 0) {
+            ClassFileStamp stamp = ClassFileStamp.of(classLoader, className);
+            if (stamp != null && stamp.getLastModified() == lastModified && stamp.getLength() == definition.length) {
+                return true;
+            }
+        }
+
+        URL classFileResource = classLoader.getResource(className.replace(".", "/") + ".class");
+        if (classFileResource == null) {
+            return false;
+        }
+
+        try {
+            URLConnection connection = classFileResource.openConnection();
+            int length = connection.getContentLength();
+            InputStream inputStream = connection.getInputStream();
+            try {
+                if (length >= 0 && length != definition.length) {
+                    return false;
+                }
+                byte[] bytes = IoUtil.read(inputStream);
+                return bytes.length == definition.length && DigestUtil.digest(bytes).equals(digest);
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            throw new UnexpectedIOException("reading class files", e);
+        }
+    }
+
     /**
      * Gets the class definition bytes of any closures classes that are used by the given closure class.
      *
@@ -98,12 +202,19 @@ public class ClosureCommandGenerator implements CommandGenerator<RawClosureComma
      */
     protected List<byte[]> getSupportingClassesBytes(Class<? extends Closure> closureClass) {
         try {
-            return new InnerClosureClassDefinitionsFinder(classLoader).find(closureClass);
+            return getInnerClosureClassDefinitionsFinder().find(closureClass);
         } catch (IOException e) {
             throw new UnexpectedIOException("cannnot find inner closures of: " + closureClass.getName(), e);
         }
     }
 
+    private synchronized InnerClosureClassDefinitionsFinder getInnerClosureClassDefinitionsFinder() {
+        if (innerClosureClassDefinitionsFinder == null) {
+            innerClosureClassDefinitionsFinder = new InnerClosureClassDefinitionsFinder(classLoader);
+        }
+        return innerClosureClassDefinitionsFinder;
+    }
+
     /**
      * Gets the class definition bytes for the given closure class.
      */
@@ -144,4 +255,41 @@ public class ClosureCommandGenerator implements CommandGenerator<RawClosureComma
         }
     }
 
+    /**
+     * The class definitions of a closure class and its supporting classes, along with their digests.
+     */
+    private static class ClosureClassDefinitions {
+        private final byte[] bytes;
+        private final String digest;
+        private final List<byte[]> supports;
+        private final List<String> supportDigests;
+
+        ClosureClassDefinitions(byte[] bytes, List<byte[]> supports) {
+            this(bytes, DigestUtil.digest(bytes), supports, digestsOf(supports));
+        }
+
+        ClosureClassDefinitions(byte[] bytes, String digest, List<byte[]> supports, List<String> supportDigests) {
+            this.bytes = bytes;
+            this.digest = digest;
+            this.supports = Collections.unmodifiableList(new ArrayList<byte[]>(supports));
+            this.supportDigests = Collections.unmodifiableList(new ArrayList<String>(supportDigests));
+        }
+
+        private static List<String> digestsOf(List<byte[]> definitions) {
+            List<String> digests = new ArrayList<String>(definitions.size());
+            for (byte[] definition : definitions) {
+                digests.add(DigestUtil.digest(definition));
+            }
+            return digests;
+        }
+
+        void addSupportsTo(Map<String, byte[]> definitions) {
+            for (int i = 0; i < supports.size(); ++i) {
+                if (!definitions.containsKey(supportDigests.get(i))) {
+                    definitions.put(supportDigests.get(i), supports.get(i));
+                }
+            }
+        }
+    }
+
 }
@@ -10,30 +10,53 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+/**
+ * Finds the class definitions of the closures defined inside a closure class, by looking for their class files in the
+ * file system roots of a URLClassLoader hierarchy.
+ *
+ * Roots are looked up via a {@link ClassPathIndex}, which by default is shared by all finders.
+ */
 public class InnerClosureClassDefinitionsFinder {
 
+    private static final ClassPathIndex SHARED_INDEX = new ClassPathIndex();
+
     private final URLClassLoader classLoader;
+    private final ClassPathIndex index;
 
-    public InnerClosureClassDefinitionsFinder(ClassLoader classLoader) {
+    public InnerClosureClassDefinitionsFinder(ClassLoader classLoader, ClassPathIndex index) {
         if (!(classLoader instanceof URLClassLoader)) {
             throw new IllegalArgumentException("Only URLClassLoaders are supported");
         }
 
         this.classLoader = ((URLClassLoader) (classLoader));
+        this.index = index;
+    }
+
+    public InnerClosureClassDefinitionsFinder(ClassLoader classLoader) {
+        this(classLoader, SHARED_INDEX);
     }
 
-    @SuppressWarnings("NestedBlockDepth")
     public List<byte[]> find(Class<? extends Closure> clazz) throws IOException {
-        List<byte[]> classes = new ArrayList<byte[]>();
+        return new ArrayList<byte[]>(findByClassName(clazz).values());
+    }
+
+    /**
+     * Finds the class definitions of the inner closures of the given closure class, keyed by class name.
+     */
+    @SuppressWarnings("NestedBlockDepth")
+    public Map<String, byte[]> findByClassName(Class<? extends Closure> clazz) throws IOException {
+        Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
         String innerClassPrefix = toInnerClassPrefix(clazz);
         String packageDirPath = toPackageDirPath(clazz);
-        String innerClassPrefixWithPackage = packageDirPath + "/" + innerClassPrefix;
         String ownerClassFileName = innerClassPrefix + ".class";
+        int firstDollar = innerClassPrefix.indexOf('$');
+        String topLevelClassName = firstDollar < 0 ? innerClassPrefix : innerClassPrefix.substring(0, firstDollar);
 
         for (URLClassLoader loader : calculateEffectiveClassLoaderHierarchy()) {
             for (URL url : loader.getURLs()) {
@@ -54,30 +77,35 @@ public class InnerClosureClassDefinitionsFinder {
                     continue;
                 }
 
-                if (root.isDirectory()) {
-                    File packageDir = packageDirPath != null ? new File(root, packageDirPath) : root;
-                    if (packageDir.exists()) {
-                        for (String classFileName : packageDir.list()) {
-                            if (classFileName.startsWith(innerClassPrefix) && classFileName.endsWith(".class") && classFileName.length() != ownerClassFileName.length()) {
-                                File file = new File(packageDir, classFileName);
-                                classes.add(IoUtil.read(file));
-                            }
-                        }
+                boolean isDirectory = root.isDirectory();
+                if (!isDirectory && !root.getName().endsWith(".jar") && !root.getName().endsWith(".zip")) {
+                    continue;
+                }
+
+                List<String> matches = new ArrayList<String>();
+                for (String classFileName : index.getInnerClassFileNames(root, packageDirPath, topLevelClassName)) {
+                    if (classFileName.startsWith(innerClassPrefix) && !classFileName.equals(ownerClassFileName)) {
+                        matches.add(classFileName);
                     }
-                } else if (root.getName().endsWith(".jar") || root.getName().endsWith(".zip")) {
-                    ZipFile jarFile = new ZipFile(root);
+                }
 
+                if (matches.isEmpty()) {
+                    continue;
+                }
+
+                if (isDirectory) {
+                    File packageDir = packageDirPath.length() == 0 ? root : new File(root, packageDirPath);
+                    for (String classFileName : matches) {
+                        classes.put(toClassName(packageDirPath, classFileName), IoUtil.read(new File(packageDir, classFileName)));
+                    }
+                } else {
+                    ZipFile jarFile = new ZipFile(root);
                     try {
-                        Object packageDir = packageDirPath == null ? root : jarFile.getEntry(packageDirPath);
-                        if (packageDir != null) {
-                            Enumeration<? extends ZipEntry> entries = jarFile.entries();
-                            while (entries.hasMoreElements()) {
-                                ZipEntry entry = entries.nextElement();
-                                String name = entry.getName();
-                                if (name.startsWith(innerClassPrefixWithPackage) && name.endsWith(".class") && !name.endsWith(ownerClassFileName)) {
-                                    InputStream inputStream = jarFile.getInputStream(entry);
-                                    classes.add(IoUtil.read(inputStream));
-                                }
+                        for (String classFileName : matches) {
+                            ZipEntry entry = jarFile.getEntry(packageDirPath.length() == 0 ? classFileName : packageDirPath + "/" + classFileName);
+                            if (entry != null) {
+                                InputStream inputStream = jarFile.getInputStream(entry);
+                                classes.put(toClassName(packageDirPath, classFileName), IoUtil.read(inputStream));
                             }
                         }
                     } finally {
@@ -91,6 +119,11 @@ public class InnerClosureClassDefinitionsFinder {
         return classes;
     }
 
+    private static String toClassName(String packageDirPath, String classFileName) {
+        String className = classFileName.substring(0, classFileName.length() - ".class".length());
+        return packageDirPath.length() == 0 ? className : packageDirPath.replace('/', '.') + "." + className;
+    }
+
     protected List<URLClassLoader> calculateEffectiveClassLoaderHierarchy() {
         List<URLClassLoader> hierarchy = new ArrayList<URLClassLoader>();
         URLClassLoader current = classLoader;
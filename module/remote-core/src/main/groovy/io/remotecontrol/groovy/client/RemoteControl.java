@@ -2,15 +2,20 @@ package io.remotecontrol.groovy.client;
 
 import groovy.lang.Closure;
 import io.remotecontrol.CommandChain;
+import io.remotecontrol.StreamCommand;
 import io.remotecontrol.client.CommandGenerator;
+import io.remotecontrol.client.LazyResult;
 import io.remotecontrol.client.RemoteControlSupport;
+import io.remotecontrol.client.ResultStreamIterator;
 import io.remotecontrol.client.Transport;
 import io.remotecontrol.client.UnserializableResultStrategy;
+import io.remotecontrol.groovy.ClosureBundle;
 import io.remotecontrol.groovy.ClosureCommand;
 import io.remotecontrol.groovy.ClosureUtil;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Future;
 
 public class RemoteControl {
 
@@ -25,11 +30,31 @@ public class RemoteControl {
         this(transport, UnserializableResultStrategy.THROW, classLoader);
     }
 
+    /**
+     * Creates a remote control that takes the class definitions of the closures in the given bundle from the bundle.
+     *
+     * @see ClosureBundleBuilder
+     */
+    public RemoteControl(Transport transport, ClassLoader classLoader, ClosureBundle bundle) {
+        this(transport, UnserializableResultStrategy.THROW, classLoader, bundle);
+    }
+
     protected RemoteControl(Transport transport, UnserializableResultStrategy unserializableResultStrategy, ClassLoader classLoader) {
+        this(transport, unserializableResultStrategy, classLoader, null);
+    }
+
+    protected RemoteControl(Transport transport, UnserializableResultStrategy unserializableResultStrategy, ClassLoader classLoader, ClosureBundle bundle) {
         this.support = new RemoteControlSupport<ClosureCommand>(transport, unserializableResultStrategy, classLoader);
-        this.commandGenerator = new ClosureCommandGenerator(classLoader);
+        this.commandGenerator = new ClosureCommandGenerator(classLoader, bundle);
     }
 
+    /**
+     * Executes the commands, the result of the last command being returned.
+     *
+     * The {@code usedClosures} parameter (an iterable of closures) lists closures used by the commands that are to be sent
+     * along with them. The {@code discardResult} parameter (a boolean) tells the receiver not to return the result, so it is never
+     * serialised and null is returned. Exceptions are still thrown.
+     */
     public Object exec(Closure[] commands) throws IOException {
         return exec(new LinkedHashMap<String, Object>(), commands);
     }
@@ -41,6 +66,94 @@ public class RemoteControl {
         return support.send(commandChain);
     }
 
+    /**
+     * Executes the commands, returning a handle to the result that only deserialises it when it is accessed.
+     *
+     * Takes the same parameters as {@link #exec(java.util.Map, groovy.lang.Closure[])}. Exceptions are thrown immediately.
+     */
+    public LazyResult execLazy(Closure[] commands) throws IOException {
+        return execLazy(new LinkedHashMap<String, Object>(), commands);
+    }
+
+    public LazyResult execLazy(Map<String, ?> params, Closure[] commands) throws IOException {
+        Map<String, Object> copy = new LinkedHashMap<String, Object>(params);
+        processExecParams(copy);
+        CommandChain<ClosureCommand> commandChain = generateCommandChain(copy, commands);
+        return support.sendLazy(commandChain);
+    }
+
+    /**
+     * Sends the commands for execution, returning a future for the result instead of waiting for it.
+     *
+     * The commands are only executed concurrently with the caller if the transport is an {@link io.remotecontrol.client.AsyncTransport}.
+     * Exceptions raised remotely are thrown by the future, wrapped in an {@link java.util.concurrent.ExecutionException}.
+     */
+    public Future<Object> execAsync(Closure[] commands) throws IOException {
+        return execAsync(new LinkedHashMap<String, Object>(), commands);
+    }
+
+    public Future<Object> execAsync(Map<String, ?> params, Closure[] commands) throws IOException {
+        Map<String, Object> copy = new LinkedHashMap<String, Object>(params);
+        processExecParams(copy);
+        CommandChain<ClosureCommand> commandChain = generateCommandChain(copy, commands);
+        return support.sendAsync(commandChain);
+    }
+
+    /**
+     * Sends command chains in a single request, returning their results in the same order.
+     *
+     * Each element is a closure, or an array or collection of closures, that becomes a separate command chain. The chains are
+     * independent, so the result of one is not passed to the next. Every chain is executed, even if others fail; if any failed,
+     * the exception of the first failed chain is thrown.
+     *
+     * In addition to the parameters of {@link #exec(java.util.Map, groovy.lang.Closure[])}, the {@code parallel} parameter
+     * (a boolean) allows the receiver to execute the chains concurrently.
+     */
+    public List<Object> execBatch(List<?> chains) throws IOException {
+        return execBatch(new LinkedHashMap<String, Object>(), chains);
+    }
+
+    public List<Object> execBatch(Map<String, ?> params, List<?> chains) throws IOException {
+        Map<String, Object> copy = new LinkedHashMap<String, Object>(params);
+        Object parallel = copy.remove("parallel");
+        if (parallel != null && !(parallel instanceof Boolean)) {
+            throw new IllegalArgumentException("'parallel' argument must be a boolean");
+        }
+        processExecParams(copy);
+
+        List<CommandChain<ClosureCommand>> commandChains = new ArrayList<CommandChain<ClosureCommand>>(chains.size());
+        for (Object chain : chains) {
+            commandChains.add(generateCommandChain(copy, toClosures(chain)));
+        }
+        return support.sendBatch(commandChains, Boolean.TRUE.equals(parallel));
+    }
+
+    /**
+     * Sends the commands for execution, returning an iterator over the elements of the result that fetches them from the receiver in chunks.
+     *
+     * The result is only iterated on the receiver as far as the chunks that have been fetched, so large results are never held in full
+     * on either side. An iterator that is not consumed to the end should be closed.
+     *
+     * In addition to the parameters of {@link #exec(java.util.Map, groovy.lang.Closure[])}, the {@code chunkSize} parameter
+     * (an int, {@link StreamCommand#DEFAULT_CHUNK_SIZE} by default) is the maximum number of elements to fetch in each request.
+     *
+     * @see io.remotecontrol.client.ResultStreamIterator
+     */
+    public ResultStreamIterator stream(Closure[] commands) throws IOException {
+        return stream(new LinkedHashMap<String, Object>(), commands);
+    }
+
+    public ResultStreamIterator stream(Map<String, ?> params, Closure[] commands) throws IOException {
+        Map<String, Object> copy = new LinkedHashMap<String, Object>(params);
+        Object chunkSize = copy.remove("chunkSize");
+        if (chunkSize != null && !(chunkSize instanceof Integer)) {
+            throw new IllegalArgumentException("'chunkSize' argument must be an int");
+        }
+        processExecParams(copy);
+        CommandChain<ClosureCommand> commandChain = generateCommandChain(copy, commands);
+        return support.sendStream(commandChain, chunkSize == null ? StreamCommand.DEFAULT_CHUNK_SIZE : (Integer) chunkSize);
+    }
+
     public Object call(Closure[] commands) throws IOException {
         return exec(commands);
     }
@@ -65,12 +178,38 @@ public class RemoteControl {
                     throw new IllegalArgumentException("'usedClosures' argument must be iterable");
                 }
 
+            } else if (key.equals("discardResult")) {
+                if (!(params.get(key) instanceof Boolean)) {
+                    throw new IllegalArgumentException("'discardResult' argument must be a boolean");
+                }
+
             } else {
                 throw new IllegalArgumentException("Unknown option '" + key + "'");
             }
         }
     }
 
+    private static Closure<?>[] toClosures(Object chain) {
+        if (chain instanceof Closure) {
+            return new Closure<?>[]{(Closure<?>) chain};
+        } else if (chain instanceof Closure[]) {
+            return (Closure<?>[]) chain;
+        } else if (chain instanceof Collection) {
+            Collection<?> elements = (Collection<?>) chain;
+            Closure<?>[] closures = new Closure<?>[elements.size()];
+            int i = 0;
+            for (Object element : elements) {
+                if (!(element instanceof Closure)) {
+                    throw new IllegalArgumentException("batch command chains must only contain closures");
+                }
+                closures[i++] = (Closure<?>) element;
+            }
+            return closures;
+        } else {
+            throw new IllegalArgumentException("batch elements must be closures, or arrays or collections of closures");
+        }
+    }
+
     protected CommandChain<ClosureCommand> generateCommandChain(final Map<String, Object> params, Closure<?>[] closures) throws IOException {
         List<ClosureCommand> commands = new ArrayList<ClosureCommand>(closures.length);
         for (Closure<?> closure : closures) {
@@ -83,7 +222,8 @@ public class RemoteControl {
             ClosureCommand command = commandGenerator.generate(new RawClosureCommand(closure, uses));
             commands.add(command);
         }
-        return CommandChain.of(ClosureCommand.class, commands);
+        CommandChain<ClosureCommand> commandChain = CommandChain.of(ClosureCommand.class, commands);
+        return Boolean.TRUE.equals(params.get("discardResult")) ? commandChain.withResultDiscarded() : commandChain;
     }
 
 }
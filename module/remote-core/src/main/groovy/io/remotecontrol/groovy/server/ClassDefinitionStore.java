@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.groovy.server;
+
+import io.remotecontrol.groovy.ClosureCommand;
+import io.remotecontrol.util.DigestUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds class definitions received from clients, keyed by their digest, so that clients can omit definitions the receiver already has.
+ *
+ * The least recently used definitions are evicted when the store grows beyond its maximum size.
+ */
+public class ClassDefinitionStore {
+
+    public static final int DEFAULT_MAX_SIZE = 2048;
+
+    private final Map<String, byte[]> definitions;
+
+    public ClassDefinitionStore(final int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must not be negative");
+        }
+
+        this.definitions = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public ClassDefinitionStore() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Returns the digests, of those given, that this store does not have a definition for.
+     */
+    public List<String> findMissing(Collection<String> digests) {
+        List<String> missing = new ArrayList<String>();
+        synchronized (definitions) {
+            for (String digest : digests) {
+                if (!definitions.containsKey(digest)) {
+                    missing.add(digest);
+                }
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Stores the class definitions of the given command, if it has them and their digests.
+     *
+     * The digests come from the client, so nothing is stored unless they are the digests of the definitions.
+     *
+     * @return false if the command's digests do not match its class definitions
+     */
+    public boolean store(ClosureCommand command) {
+        if (!command.hasDigests() || !command.hasClassDefinitions()) {
+            return true;
+        }
+
+        if (!command.getRootDigest().equals(DigestUtil.digest(command.getRoot()))) {
+            return false;
+        }
+        Iterator<String> expected = command.getSupportDigests().iterator();
+        for (byte[] support : command.getSupports()) {
+            if (!expected.hasNext() || !expected.next().equals(DigestUtil.digest(support))) {
+                return false;
+            }
+        }
+        if (expected.hasNext()) {
+            return false;
+        }
+
+        synchronized (definitions) {
+            definitions.put(command.getRootDigest(), command.getRoot());
+            Iterator<String> digests = command.getSupportDigests().iterator();
+            for (byte[] support : command.getSupports()) {
+                definitions.put(digests.next(), support);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores the given class definitions, keyed by digest.
+     */
+    public void storeAll(Map<String, byte[]> definitionsByDigest) {
+        synchronized (definitions) {
+            definitions.putAll(definitionsByDigest);
+        }
+    }
+
+    /**
+     * Returns the given command with its class definitions restored from this store.
+     *
+     * If the command already has its class definitions it is returned as is. If any of the definitions are not
+     * in this store, their digests are added to the given collection and null is returned.
+     */
+    public ClosureCommand resolve(ClosureCommand command, Collection<String> missing) {
+        if (command.hasClassDefinitions()) {
+            return command;
+        }
+
+        byte[] root;
+        List<byte[]> supports = new ArrayList<byte[]>(command.getSupportDigests().size());
+        int missingBefore = missing.size();
+        synchronized (definitions) {
+            root = lookup(command.getRootDigest(), missing);
+            for (String digest : command.getSupportDigests()) {
+                supports.add(lookup(digest, missing));
+            }
+        }
+
+        return missing.size() == missingBefore ? command.withClassDefinitions(root, supports) : null;
+    }
+
+    public int size() {
+        synchronized (definitions) {
+            return definitions.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (definitions) {
+            definitions.clear();
+        }
+    }
+
+    private byte[] lookup(String digest, Collection<String> missing) {
+        byte[] definition = definitions.get(digest);
+        if (definition == null) {
+            missing.add(digest);
+        }
+        return definition;
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.groovy.server;
+
+import io.remotecontrol.CommandChain;
+import io.remotecontrol.groovy.ClassDefinitionsQuery;
+import io.remotecontrol.result.Result;
+import io.remotecontrol.result.ResultFactory;
+import io.remotecontrol.server.CommandRunner;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Answers {@link ClassDefinitionsQuery} commands with the digests that the store does not have.
+ */
+public class ClassDefinitionsQueryRunner implements CommandRunner<ClassDefinitionsQuery> {
+
+    private final ClassDefinitionStore classDefinitionStore;
+    private final ResultFactory resultFactory;
+
+    public ClassDefinitionsQueryRunner(ClassDefinitionStore classDefinitionStore, ResultFactory resultFactory) {
+        this.classDefinitionStore = classDefinitionStore;
+        this.resultFactory = resultFactory;
+    }
+
+    @Override
+    public Class<ClassDefinitionsQuery> getType() {
+        return ClassDefinitionsQuery.class;
+    }
+
+    @Override
+    public Result run(CommandChain<ClassDefinitionsQuery> commandChain) {
+        Set<String> missing = new LinkedHashSet<String>();
+        for (ClassDefinitionsQuery query : commandChain.getCommands()) {
+            missing.addAll(classDefinitionStore.findMissing(query.getDigests()));
+        }
+        return resultFactory.forValue(new ArrayList<String>(missing));
+    }
+
+}
@@ -20,19 +20,42 @@ import io.remotecontrol.CommandChain;
 import io.remotecontrol.groovy.ClosureCommand;
 import io.remotecontrol.result.Result;
 import io.remotecontrol.result.ResultFactory;
+import io.remotecontrol.result.impl.DefaultMissingClassDefinitionsResult;
 import io.remotecontrol.server.CommandChainInvoker;
+import io.remotecontrol.server.CommandClassLoaderCache;
 import io.remotecontrol.server.CommandRunner;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class ClosureCommandRunner implements CommandRunner<ClosureCommand> {
 
     private final ClassLoader classLoader;
     private final ContextFactory contextFactory;
     private final ResultFactory resultFactory;
+    private final CommandClassLoaderCache classLoaderCache;
+    private final ClassDefinitionStore classDefinitionStore;
 
-    public ClosureCommandRunner(ClassLoader classLoader, ContextFactory contextFactory, ResultFactory resultFactory) {
+    /**
+     * @param classDefinitionStore the store that received class definitions are added to, and that omitted class definitions are resolved from
+     */
+    public ClosureCommandRunner(ClassLoader classLoader, ContextFactory contextFactory, ResultFactory resultFactory, CommandClassLoaderCache classLoaderCache, ClassDefinitionStore classDefinitionStore) {
         this.classLoader = classLoader;
         this.contextFactory = contextFactory;
         this.resultFactory = resultFactory;
+        this.classLoaderCache = classLoaderCache;
+        this.classDefinitionStore = classDefinitionStore;
+    }
+
+    public ClosureCommandRunner(ClassLoader classLoader, ContextFactory contextFactory, ResultFactory resultFactory, CommandClassLoaderCache classLoaderCache) {
+        this(classLoader, contextFactory, resultFactory, classLoaderCache, new ClassDefinitionStore());
+    }
+
+    /**
+     * Creates a runner that caches the class loaders of up to {@link CommandClassLoaderCache#DEFAULT_MAX_SIZE} distinct commands.
+     */
+    public ClosureCommandRunner(ClassLoader classLoader, ContextFactory contextFactory, ResultFactory resultFactory) {
+        this(classLoader, contextFactory, resultFactory, new CommandClassLoaderCache(classLoader));
     }
 
     @Override
@@ -42,7 +65,43 @@ public class ClosureCommandRunner implements CommandRunner<ClosureCommand> {
 
     @Override
     public Result run(CommandChain<ClosureCommand> commandChain) {
-        return invokeCommandChain(commandChain);
+        List<String> missing = new ArrayList<String>();
+        CommandChain<ClosureCommand> resolved = resolveClassDefinitions(commandChain, missing);
+        if (!missing.isEmpty()) {
+            return new DefaultMissingClassDefinitionsResult(missing);
+        }
+
+        return invokeCommandChain(resolved);
+    }
+
+    /**
+     * Stores the class definitions sent with the commands, and restores those that were omitted.
+     *
+     * Nothing is executed if any omitted definitions are unknown, so that the client can safely resend the chain with them.
+     * Commands whose digests do not match their class definitions lose their digests, so that their classes are never
+     * shared with commands that really have those digests.
+     */
+    protected CommandChain<ClosureCommand> resolveClassDefinitions(CommandChain<ClosureCommand> commandChain, List<String> missing) {
+        List<? extends ClosureCommand> commands = commandChain.getCommands();
+        boolean changed = false;
+        List<ClosureCommand> resolved = new ArrayList<ClosureCommand>(commands.size());
+        for (ClosureCommand command : commands) {
+            if (!classDefinitionStore.store(command)) {
+                command = new ClosureCommand(command.getInstance(), command.getRoot(), command.getSupports());
+                changed = true;
+            }
+            resolved.add(command);
+        }
+
+        for (int i = 0; i < resolved.size(); ++i) {
+            ClosureCommand command = resolved.get(i);
+            if (!command.hasClassDefinitions()) {
+                resolved.set(i, classDefinitionStore.resolve(command, missing));
+                changed = true;
+            }
+        }
+
+        return changed ? commandChain.withCommands(resolved) : commandChain;
     }
 
     protected Result invokeCommandChain(CommandChain<ClosureCommand> commandChain) {
@@ -51,7 +110,7 @@ public class ClosureCommandRunner implements CommandRunner<ClosureCommand> {
     }
 
     protected CommandChainInvoker createInvoker(ClassLoader classLoader, CommandChain<ClosureCommand> commandChain) {
-        return new CommandChainInvoker(classLoader, commandChain, resultFactory);
+        return new CommandChainInvoker(classLoader, commandChain, resultFactory, classLoaderCache);
     }
 
     protected Object createContext(CommandChain<ClosureCommand> commandChain) {
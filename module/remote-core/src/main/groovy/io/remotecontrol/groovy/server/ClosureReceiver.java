@@ -17,23 +17,45 @@
 package io.remotecontrol.groovy.server;
 
 import groovy.lang.Closure;
+import io.remotecontrol.CommandChain;
+import io.remotecontrol.groovy.ClosureBundle;
+import io.remotecontrol.groovy.ClosureCommand;
+import io.remotecontrol.result.Result;
 import io.remotecontrol.result.ResultFactory;
 import io.remotecontrol.result.impl.DefaultResultFactory;
+import io.remotecontrol.server.BatchCommandRunner;
+import io.remotecontrol.server.CommandClassLoaderCache;
+import io.remotecontrol.server.CommandClassLoaderTracker;
+import io.remotecontrol.server.CommandChainReceiver;
 import io.remotecontrol.server.MultiTypeReceiver;
-import io.remotecontrol.server.Receiver;
+import io.remotecontrol.server.ResultStreams;
 import io.remotecontrol.server.StorageContextFactory;
+import io.remotecontrol.server.StreamChunkCommandRunner;
+import io.remotecontrol.server.StreamCommandRunner;
+import io.remotecontrol.server.StreamingResultFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collections;
 import java.util.Map;
 
 /**
  * Receives a serialised command chain as an input stream to be unserialised and executed, then writes the serialised result to an output stream.
+ *
+ * Class definitions received with commands are retained, and {@link io.remotecontrol.groovy.ClassDefinitionsQuery} commands
+ * are answered, so that clients using {@link io.remotecontrol.groovy.client.ClassNegotiatingTransport} can omit them.
+ * Batches of command chains ({@link io.remotecontrol.BatchCommand}) are executed too, as are command chains whose results are
+ * streamed back in chunks ({@link io.remotecontrol.StreamCommand}).
+ *
+ * The class definitions of a {@link ClosureBundle} can be {@link #preload(ClosureBundle) preloaded}, so that the first commands
+ * using them do not pay for sending or defining them.
  */
-public class ClosureReceiver implements Receiver {
+public class ClosureReceiver implements CommandChainReceiver {
 
-    private final Receiver delegate;
+    private final CommandChainReceiver delegate;
+    private final ClassDefinitionStore classDefinitionStore;
+    private final CommandClassLoaderCache classLoaderCache;
 
     /**
      * @param classLoader the class loader that will be used when unserialising the command chain
@@ -41,7 +63,41 @@ public class ClosureReceiver implements Receiver {
      * @see ContextFactory
      */
     public ClosureReceiver(ClassLoader classLoader, ContextFactory contextFactory, ResultFactory resultFactory) {
-        delegate = new MultiTypeReceiver(classLoader, new ClosureCommandRunner(classLoader, contextFactory, resultFactory));
+        this(classLoader, contextFactory, resultFactory, CommandClassLoaderCache.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param classLoader the class loader that will be used when unserialising the command chain
+     * @param contextFactory the context factory to use to create contexts for command chains
+     * @param classLoaderCacheSize the number of command class loaders to retain, 0 to define the classes of each chain in
+     * a loader of its own that can be unloaded as soon as the chain has executed
+     * @see CommandClassLoaderCache
+     */
+    public ClosureReceiver(ClassLoader classLoader, ContextFactory contextFactory, ResultFactory resultFactory, int classLoaderCacheSize) {
+        this(classLoader, contextFactory, resultFactory, classLoaderCacheSize, new CommandClassLoaderTracker());
+    }
+
+    /**
+     * @param classLoader the class loader that will be used when unserialising the command chain
+     * @param contextFactory the context factory to use to create contexts for command chains
+     * @param classLoaderCacheSize the number of command class loaders to retain
+     * @param classLoaderTracker tracks the command class loaders, and rejects command chains when they exceed its budget
+     * @see CommandClassLoaderTracker
+     */
+    public ClosureReceiver(ClassLoader classLoader, ContextFactory contextFactory, ResultFactory resultFactory, int classLoaderCacheSize, CommandClassLoaderTracker classLoaderTracker) {
+        classDefinitionStore = new ClassDefinitionStore();
+        classLoaderCache = new CommandClassLoaderCache(classLoader, classLoaderCacheSize, classLoaderTracker);
+        ClosureCommandRunner closureCommandRunner = new ClosureCommandRunner(classLoader, contextFactory, resultFactory, classLoaderCache, classDefinitionStore);
+        ClassDefinitionsQueryRunner classDefinitionsQueryRunner = new ClassDefinitionsQueryRunner(classDefinitionStore, resultFactory);
+        ResultStreams streams = new ResultStreams(resultFactory);
+        ClosureCommandRunner streamingClosureCommandRunner = new ClosureCommandRunner(classLoader, contextFactory, new StreamingResultFactory(resultFactory, streams), classLoaderCache, classDefinitionStore);
+        delegate = new MultiTypeReceiver(classLoader,
+            closureCommandRunner,
+            classDefinitionsQueryRunner,
+            new BatchCommandRunner(new MultiTypeReceiver(classLoader, closureCommandRunner, classDefinitionsQueryRunner), resultFactory),
+            new StreamCommandRunner(new MultiTypeReceiver(classLoader, streamingClosureCommandRunner), resultFactory, streams),
+            new StreamChunkCommandRunner(resultFactory, streams)
+        );
     }
 
     /**
@@ -123,8 +179,47 @@ public class ClosureReceiver implements Receiver {
         this(Thread.currentThread().getContextClassLoader(), contextStorageSeed);
     }
 
+    /**
+     * Stores the class definitions of the bundle, and defines each closure class in it (its inner closures are still only defined when used).
+     *
+     * As each closure class is defined in a loader of its own, only as many closure classes are defined as the command class
+     * loader cache retains loaders (none if it retains none); the rest are defined when first used.
+     *
+     * Commands for closures of the bundle can then omit their class definitions (when sent through a
+     * {@link io.remotecontrol.groovy.client.ClassNegotiatingTransport}), and single command chains for them use the already defined classes.
+     */
+    public void preload(ClosureBundle bundle) {
+        classDefinitionStore.storeAll(bundle.getDefinitions());
+        int remaining = classLoaderCache.getMaxSize();
+        for (ClosureBundle.Entry entry : bundle.getEntries().values()) {
+            if (remaining-- <= 0) {
+                break;
+            }
+            ClosureCommand command = new ClosureCommand(null, entry.getRoot(), entry.getSupports(), entry.getRootDigest(), entry.getSupportDigests());
+            ClassLoader loader = classLoaderCache.getLoader(Collections.singletonList(command));
+            if (loader != null) {
+                try {
+                    loader.loadClass(entry.getClassName());
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalArgumentException("Bundle entry " + entry.getClassName() + " does not define its class", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * The tracker of the class loaders that command classes are defined in, which has the number of live loaders and an estimate of their Metaspace use.
+     */
+    public CommandClassLoaderTracker getClassLoaderTracker() {
+        return classLoaderCache.getTracker();
+    }
+
     public void execute(InputStream input, OutputStream output) throws IOException {
         delegate.execute(input, output);
     }
 
+    public Result execute(CommandChain<?> commandChain) {
+        return delegate.execute(commandChain);
+    }
+
 }
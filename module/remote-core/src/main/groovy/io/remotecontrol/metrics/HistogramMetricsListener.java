@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.metrics;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a histogram of the durations, and the total byte count, of each phase in memory.
+ *
+ * Install with {@link Metrics#setListener(MetricsListener)}, then inspect (or print the {@link #toString() summary}) after the calls of interest.
+ */
+public class HistogramMetricsListener implements MetricsListener {
+
+    private final Map<Phase, Histogram> times = new EnumMap<Phase, Histogram>(Phase.class);
+    private final Map<Phase, AtomicLong> bytes = new EnumMap<Phase, AtomicLong>(Phase.class);
+
+    public HistogramMetricsListener() {
+        for (Phase phase : Phase.values()) {
+            times.put(phase, new Histogram());
+            bytes.put(phase, new AtomicLong());
+        }
+    }
+
+    public void time(Phase phase, long nanos) {
+        times.get(phase).record(nanos);
+    }
+
+    public void bytes(Phase phase, long count) {
+        bytes.get(phase).addAndGet(count);
+    }
+
+    /**
+     * The durations of the given phase, in nanoseconds.
+     */
+    public Histogram getTimes(Phase phase) {
+        return times.get(phase);
+    }
+
+    /**
+     * The total number of bytes processed by the given phase.
+     */
+    public long getBytes(Phase phase) {
+        return bytes.get(phase).get();
+    }
+
+    public void reset() {
+        for (Phase phase : Phase.values()) {
+            times.get(phase).reset();
+            bytes.get(phase).set(0);
+        }
+    }
+
+    /**
+     * A line for each phase that has been recorded, with its count, mean, 50th, 99th percentile and max durations (in microseconds) and total bytes.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            Histogram histogram = times.get(phase);
+            if (histogram.getCount() > 0) {
+                builder.append(String.format(Locale.ENGLISH, "%-14s count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus bytes=%d%n",
+                    phase, histogram.getCount(), histogram.getMean() / 1000, histogram.getPercentile(0.5) / 1000.0,
+                    histogram.getPercentile(0.99) / 1000.0, histogram.getMax() / 1000.0, getBytes(phase)));
+            }
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.metrics;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+/**
+ * Holds the listener that metrics are reported to.
+ *
+ * The listener is the first implementation of {@link MetricsListener} registered as a service (i.e. in
+ * {@code META-INF/services/io.remotecontrol.metrics.MetricsListener}) that is visible to this class, or a
+ * {@link NoOpMetricsListener} if there isn't one, unless it has been {@link #setListener set}.
+ */
+public abstract class Metrics {
+
+    private static volatile MetricsListener listener = loadListener();
+
+    private Metrics() {
+
+    }
+
+    public static MetricsListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Sets the listener that metrics are reported to, or resets it to a no-op listener if null.
+     */
+    public static void setListener(MetricsListener listener) {
+        Metrics.listener = listener == null ? NoOpMetricsListener.INSTANCE : listener;
+    }
+
+    private static MetricsListener loadListener() {
+        Iterator<MetricsListener> listeners = ServiceLoader.load(MetricsListener.class, Metrics.class.getClassLoader()).iterator();
+        return listeners.hasNext() ? listeners.next() : NoOpMetricsListener.INSTANCE;
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.metrics;
+
+/**
+ * Receives the timings and sizes of the phases of sending and executing command chains, on both the client and the receiver.
+ *
+ * Implementations are called on the threads that do the work, so should be fast and thread safe.
+ *
+ * @see Metrics
+ */
+public interface MetricsListener {
+
+    /**
+     * Called when a phase has completed.
+     *
+     * @param nanos the duration of the phase
+     */
+    void time(Phase phase, long nanos);
+
+    /**
+     * Called with the number of bytes processed by a phase.
+     */
+    void bytes(Phase phase, long count);
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.metrics;
+
+/**
+ * The phases of sending and executing a command chain that are reported to the {@link MetricsListener}.
+ *
+ * Phases can be nested, e.g. {@link #SERIALIZE} happens within {@link #GENERATE} and {@link #ENCODE_RESULT}.
+ */
+public enum Phase {
+
+    /**
+     * Generating a command from a closure on the client. The byte count is the size of the serialised closure instance.
+     */
+    GENERATE,
+
+    /**
+     * Serialising an object (e.g. a closure instance, result value or exception). The byte count is the size of the serialised object.
+     */
+    SERIALIZE,
+
+    /**
+     * Deserialising an object. The byte count is the size of the serialised object.
+     */
+    DESERIALIZE,
+
+    /**
+     * Sending a command chain to the receiver and receiving its result, by a transport. The byte count is the size of the request.
+     */
+    SEND,
+
+    /**
+     * Defining the classes of commands in a new class loader on the receiver. The byte count is the size of the class definitions.
+     */
+    DEFINE_CLASSES,
+
+    /**
+     * Instantiating a command's closure on the receiver, including getting the loader that its classes are defined in.
+     */
+    INSTANTIATE,
+
+    /**
+     * Executing a command's closure on the receiver.
+     */
+    EXECUTE,
+
+    /**
+     * Creating the result for a value or exception on the receiver. The byte count is the size of the serialised value or exception.
+     */
+    ENCODE_RESULT,
+
+    /**
+     * Turning a result into the value to return (or the exception to throw) on the client.
+     */
+    DECODE_RESULT
+
+}
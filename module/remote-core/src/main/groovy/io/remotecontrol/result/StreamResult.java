@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.result;
+
+/**
+ * A chunk of the elements of a result stream, opened by a {@link io.remotecontrol.StreamCommand}.
+ */
+public interface StreamResult extends Result {
+
+    /**
+     * The id of the stream on the receiver, used to request the following chunks.
+     */
+    long getStreamId();
+
+    /**
+     * The result for the list of elements in this chunk.
+     */
+    Result getElements();
+
+    /**
+     * Whether this is the last chunk, in which case the receiver has already closed the stream.
+     */
+    boolean isLast();
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.result.impl;
+
+import io.remotecontrol.result.BatchResult;
+import io.remotecontrol.result.Result;
+
+import java.util.List;
+
+public class DefaultBatchResult implements BatchResult {
+
+    private final List<Result> results;
+
+    public DefaultBatchResult(List<Result> results) {
+        this.results = results;
+    }
+
+    @Override
+    public List<Result> getResults() {
+        return results;
+    }
+
+}
@@ -19,13 +19,21 @@ package io.remotecontrol.result.impl;
 import io.remotecontrol.RemoteControlException;
 import io.remotecontrol.SerializationUtil;
 import io.remotecontrol.UnserializableExceptionException;
+import io.remotecontrol.codec.Codecs;
+import io.remotecontrol.metrics.Metrics;
+import io.remotecontrol.metrics.MetricsListener;
+import io.remotecontrol.metrics.Phase;
 import io.remotecontrol.result.Result;
 import io.remotecontrol.result.ResultFactory;
+import io.remotecontrol.util.DirectByteArrayOutputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.NotSerializableException;
+import java.io.PushbackInputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class DefaultResultFactory implements ResultFactory {
 
@@ -41,36 +49,61 @@ public class DefaultResultFactory implements ResultFactory {
     }
 
     protected Result forSerializable(Serializable serializable) {
+        MetricsListener metrics = Metrics.getListener();
+        long start = System.nanoTime();
         try {
-            byte[] bytes = SerializationUtil.serialize(serializable);
-            return new DefaultSerializedResult(bytes);
+            ByteBuffer bytes = serializeToBuffer(serializable);
+            metrics.bytes(Phase.ENCODE_RESULT, bytes.remaining());
+            return new DefaultSerializedResult(bytes.array(), bytes.remaining());
         } catch (NotSerializableException e) {
             return forUnserializable(serializable);
+        } finally {
+            metrics.time(Phase.ENCODE_RESULT, System.nanoTime() - start);
         }
     }
 
+    /**
+     * Serializes the value into a buffer that the result can wrap rather than copy.
+     *
+     * Results may be retained for a while (e.g. in a batch or a stream), so a buffer with more unused space than half of its
+     * contents is trimmed.
+     */
+    private static ByteBuffer serializeToBuffer(Serializable serializable) throws NotSerializableException {
+        ByteBuffer bytes = SerializationUtil.serializeToBuffer(serializable).toByteBuffer();
+        if (bytes.capacity() - bytes.remaining() > bytes.remaining() / 2) {
+            bytes = ByteBuffer.wrap(Arrays.copyOf(bytes.array(), bytes.remaining()));
+        }
+        return bytes;
+    }
+
     protected Result forUnserializable(Object unserializable) {
         return new DefaultUnserializableResult(unserializable.toString());
     }
 
     @Override
     public Result forThrown(Throwable throwable) {
+        MetricsListener metrics = Metrics.getListener();
+        long start = System.nanoTime();
         try {
-            byte[] bytes = SerializationUtil.serialize(throwable);
-            return new DefaultThrownResult(bytes);
+            ByteBuffer bytes = serializeToBuffer(throwable);
+            metrics.bytes(Phase.ENCODE_RESULT, bytes.remaining());
+            return new DefaultThrownResult(bytes.array(), bytes.remaining());
         } catch (NotSerializableException e) {
             try {
                 return new DefaultUnserializableThrownResult(throwable.toString(), SerializationUtil.serialize(new UnserializableExceptionException(throwable)));
             } catch (NotSerializableException e1) {
                 throw new IllegalStateException("Can't serialize NotSerializableException", e1);
             }
+        } finally {
+            metrics.time(Phase.ENCODE_RESULT, System.nanoTime() - start);
         }
     }
 
     @Override
     public Result deserialize(InputStream inputStream, ClassLoader classLoader) throws IOException {
         try {
-            return SerializationUtil.deserialize(Result.class, inputStream, classLoader);
+            PushbackInputStream input = new PushbackInputStream(inputStream, Codecs.SIGNATURE_LENGTH);
+            return Codecs.detect(input).readResult(input, classLoader);
         } catch (ClassNotFoundException e) {
             throw RemoteControlException.classNotFoundOnClient(e);
         }
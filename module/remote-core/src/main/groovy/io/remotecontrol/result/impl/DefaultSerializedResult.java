@@ -20,21 +20,84 @@ import io.remotecontrol.RemoteControlException;
 import io.remotecontrol.SerializationUtil;
 import io.remotecontrol.result.SerializedResult;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A Java serialised value.
+ *
+ * The serialised value may occupy just the start of the byte array (e.g. the buffer it was serialised into), so that it
+ * does not have to be copied into an array of its own before being written by the binary codec. The Java serialisation
+ * codec still copies it, as it writes the value as a field of this object.
+ */
 public class DefaultSerializedResult implements SerializedResult {
 
+    private static final long serialVersionUID = 2852290966250729705L;
+
     private final byte[] bytes;
+    private transient int length;
 
     public DefaultSerializedResult(byte[] bytes) {
+        this(bytes, bytes.length);
+    }
+
+    /**
+     * @param bytes an array starting with the serialised value
+     * @param length the length of the serialised value
+     */
+    public DefaultSerializedResult(byte[] bytes, int length) {
+        if (length < 0 || length > bytes.length) {
+            throw new IllegalArgumentException("length must be between 0 and " + bytes.length);
+        }
         this.bytes = bytes;
+        this.length = length;
+    }
+
+    /**
+     * The serialised value, copied into an array of its own if it does not fill the underlying array.
+     */
+    public byte[] getBytes() {
+        return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * The length of the serialised value.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Writes the serialised value to the given stream, without copying it.
+     */
+    public void writeBytesTo(OutputStream outputStream) throws IOException {
+        outputStream.write(bytes, 0, length);
     }
 
     @Override
     public Object deserialize(ClassLoader classLoader) {
         try {
-            return SerializationUtil.deserialize(Object.class, bytes, classLoader);
+            return SerializationUtil.deserialize(Object.class, bytes, length, classLoader);
         } catch (ClassNotFoundException e) {
             throw RemoteControlException.classNotFoundOnClient(e);
         }
     }
 
+    // Java serialisation writes a trimmed copy, so that the serialised form is the same as it always was.
+    // Subclasses override withBytes() so that the copy is of their own type.
+    protected Object writeReplace() {
+        return length == bytes.length ? this : withBytes(getBytes());
+    }
+
+    protected DefaultSerializedResult withBytes(byte[] bytes) {
+        return new DefaultSerializedResult(bytes);
+    }
+
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        input.defaultReadObject();
+        length = bytes.length;
+    }
+
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.result.impl;
+
+import io.remotecontrol.result.Result;
+import io.remotecontrol.result.StreamResult;
+
+public class DefaultStreamResult implements StreamResult {
+
+    private final long streamId;
+    private final Result elements;
+    private final boolean last;
+
+    public DefaultStreamResult(long streamId, Result elements, boolean last) {
+        this.streamId = streamId;
+        this.elements = elements;
+        this.last = last;
+    }
+
+    @Override
+    public long getStreamId() {
+        return streamId;
+    }
+
+    @Override
+    public Result getElements() {
+        return elements;
+    }
+
+    @Override
+    public boolean isLast() {
+        return last;
+    }
+
+}
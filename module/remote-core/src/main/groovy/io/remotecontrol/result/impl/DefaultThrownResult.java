@@ -20,13 +20,24 @@ import io.remotecontrol.result.ThrownResult;
 
 public class DefaultThrownResult extends DefaultSerializedResult implements ThrownResult {
 
+    private static final long serialVersionUID = -6528607563730305655L;
+
     public DefaultThrownResult(byte[] bytes) {
         super(bytes);
     }
 
+    public DefaultThrownResult(byte[] bytes, int length) {
+        super(bytes, length);
+    }
+
     @Override
     public Throwable deserialize(ClassLoader classLoader) {
         Object deserialized = super.deserialize(classLoader);
         return (Throwable) deserialized;
     }
+
+    @Override
+    protected DefaultSerializedResult withBytes(byte[] bytes) {
+        return new DefaultThrownResult(bytes);
+    }
 }
@@ -23,6 +23,8 @@ import io.remotecontrol.result.UnserializableThrownResult;
 
 public class DefaultUnserializableThrownResult extends DefaultUnserializableResult implements UnserializableThrownResult {
 
+    private static final long serialVersionUID = -1022784787503257416L;
+
     private final byte[] notSerializableException;
 
     public DefaultUnserializableThrownResult(String stringRepresentation, byte[] notSerializableException) {
@@ -30,6 +32,13 @@ public class DefaultUnserializableThrownResult extends DefaultUnserializableResu
         this.notSerializableException = notSerializableException;
     }
 
+    /**
+     * The serialised {@link UnserializableExceptionException} that wraps the thrown exception.
+     */
+    public byte[] getWrapperBytes() {
+        return notSerializableException;
+    }
+
     @Override
     public UnserializableExceptionException deserializeWrapper(ClassLoader classLoader) {
         try {
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.server;
+
+import io.remotecontrol.BatchCommand;
+import io.remotecontrol.CommandChain;
+import io.remotecontrol.result.Result;
+import io.remotecontrol.result.ResultFactory;
+import io.remotecontrol.result.impl.DefaultBatchResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes the command chains of {@link BatchCommand}s with another receiver, producing a batch result.
+ *
+ * A failure to execute one chain (e.g. because the receiver does not handle its command type) becomes the result of that chain,
+ * and does not affect the other chains. Parallel batches are executed by an executor, which by default is a pool of daemon
+ * threads (one per processor) that is shared by all runners and created when the first parallel batch is received. Threads of the
+ * shared pool stop after being idle for {@link #DEFAULT_KEEP_ALIVE_SECONDS} seconds.
+ */
+public class BatchCommandRunner implements CommandRunner<BatchCommand> {
+
+    public static final int DEFAULT_KEEP_ALIVE_SECONDS = 60;
+
+    private final CommandChainReceiver receiver;
+    private final ResultFactory resultFactory;
+    private final ExecutorService executor;
+
+    /**
+     * @param receiver the receiver that executes the chains of the batches
+     * @param executor the executor that executes the chains of parallel batches
+     */
+    public BatchCommandRunner(CommandChainReceiver receiver, ResultFactory resultFactory, ExecutorService executor) {
+        this.receiver = receiver;
+        this.resultFactory = resultFactory;
+        this.executor = executor;
+    }
+
+    public BatchCommandRunner(CommandChainReceiver receiver, ResultFactory resultFactory) {
+        this(receiver, resultFactory, null);
+    }
+
+    @Override
+    public Class<BatchCommand> getType() {
+        return BatchCommand.class;
+    }
+
+    @Override
+    public Result run(CommandChain<BatchCommand> commandChain) {
+        List<Result> results = new ArrayList<Result>();
+        for (BatchCommand batch : commandChain.getCommands()) {
+            if (batch.isParallel() && batch.getCommandChains().size() > 1) {
+                results.addAll(executeInParallel(batch.getCommandChains()));
+            } else {
+                for (CommandChain<?> chain : batch.getCommandChains()) {
+                    results.add(execute(chain));
+                }
+            }
+        }
+        return new DefaultBatchResult(results);
+    }
+
+    private List<Result> executeInParallel(List<CommandChain<?>> chains) {
+        ExecutorService executor = getExecutor();
+        List<Future<Result>> futures = new ArrayList<Future<Result>>(chains.size());
+        for (final CommandChain<?> chain : chains) {
+            futures.add(executor.submit(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return execute(chain);
+                }
+            }));
+        }
+
+        List<Result> results = new ArrayList<Result>(chains.size());
+        for (Future<Result> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                for (Future<Result> toCancel : futures) {
+                    toCancel.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for batched command chains", e);
+            } catch (ExecutionException e) {
+                results.add(resultFactory.forThrown(e.getCause()));
+            }
+        }
+        return results;
+    }
+
+    private Result execute(CommandChain<?> chain) {
+        try {
+            return receiver.execute(chain);
+        } catch (RuntimeException e) {
+            return resultFactory.forThrown(e);
+        }
+    }
+
+    private ExecutorService getExecutor() {
+        return executor == null ? DefaultExecutor.INSTANCE : executor;
+    }
+
+    // Created on first use, so receivers that are never sent parallel batches start no threads
+    private static class DefaultExecutor {
+
+        static final ExecutorService INSTANCE = create();
+
+        private static ExecutorService create() {
+            final AtomicInteger threadCount = new AtomicInteger();
+            int threads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, DEFAULT_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "remote-control-batch-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+
+    }
+
+}
@@ -11,14 +11,40 @@ public class CommandChainInvoker {
     private final ClassLoader parentLoader;
     private final CommandChain<ClosureCommand> commandChain;
     private final ResultFactory resultFactory;
+    private final CommandClassLoaderCache classLoaderCache;
+    private final ClassLoader chainLoader;
+    private final Throwable chainLoaderFailure;
 
-    public CommandChainInvoker(ClassLoader parentLoader, CommandChain<ClosureCommand> commandChain, ResultFactory resultFactory) {
+    /**
+     * Gets the loader that the classes of the whole chain are defined in from the cache, so that every invocation uses it.
+     */
+    public CommandChainInvoker(ClassLoader parentLoader, CommandChain<ClosureCommand> commandChain, ResultFactory resultFactory, CommandClassLoaderCache classLoaderCache) {
         this.resultFactory = resultFactory;
         this.parentLoader = parentLoader;
         this.commandChain = commandChain;
+        this.classLoaderCache = classLoaderCache;
+
+        // One loader for the whole chain, unless its classes clash, in which case each command gets its own
+        ClassLoader loader = null;
+        Throwable failure = null;
+        try {
+            loader = classLoaderCache.getLoader(commandChain.getCommands());
+        } catch (Throwable throwable) {
+            failure = throwable;
+        }
+        this.chainLoader = loader;
+        this.chainLoaderFailure = failure;
+    }
+
+    public CommandChainInvoker(ClassLoader parentLoader, CommandChain<ClosureCommand> commandChain, ResultFactory resultFactory) {
+        this(parentLoader, commandChain, resultFactory, new CommandClassLoaderCache(parentLoader, 0));
     }
 
     public Result invokeAgainst(Object delegate, Object firstArg) {
+        if (chainLoaderFailure != null) {
+            return resultFactory.forThrown(chainLoaderFailure);
+        }
+
         Object arg = firstArg;
 
         for (ClosureCommand command : commandChain.getCommands()) {
@@ -32,11 +58,21 @@ public class CommandChainInvoker {
             }
         }
 
-        return resultFactory.forValue(arg);
+        return resultFactory.forValue(commandChain.isResultDiscarded() ? null : arg);
     }
 
+    /**
+     * Creates the invoker for a command of the chain, whose classes are defined in the loader shared by the chain.
+     */
     protected CommandInvoker createInvoker(ClassLoader loader, ClosureCommand command) {
-        return new CommandInvoker(loader, command);
+        return createInvoker(loader, command, chainLoader);
+    }
+
+    /**
+     * @param commandLoader the loader that the command's classes have been defined in, or null if they have not been
+     */
+    protected CommandInvoker createInvoker(ClassLoader loader, ClosureCommand command, ClassLoader commandLoader) {
+        return new CommandInvoker(loader, command, classLoaderCache, commandLoader);
     }
 
 }
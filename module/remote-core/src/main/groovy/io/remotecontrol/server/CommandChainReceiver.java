@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.server;
+
+import io.remotecontrol.CommandChain;
+import io.remotecontrol.result.Result;
+
+/**
+ * A receiver that can also execute command chains that have not been serialised.
+ *
+ * This is for transports where the client and the receiver are in the same JVM, and share the remote control classes.
+ * The commands themselves are still in their serialised form, so executing them is the same as if the chain had been serialised.
+ */
+public interface CommandChainReceiver extends Receiver {
+
+    /**
+     * Executes the given command chain.
+     *
+     * @return the result of the command chain, which has not been serialised
+     */
+    Result execute(CommandChain<?> commandChain);
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.server;
+
+import io.remotecontrol.ClassDefiner;
+import io.remotecontrol.metrics.Metrics;
+import io.remotecontrol.metrics.MetricsListener;
+import io.remotecontrol.metrics.Phase;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class loader for the classes of closure commands, that defines each class from its class definition the first time the
+ * class is asked for, instead of when the loader is created.
+ *
+ * The inner closures of a command that are not used when it is executed are therefore never defined. The class definition
+ * is released once the class has been defined.
+ *
+ * Classes that the loader has definitions for are defined by it even if the parent loader can load a class of the same name,
+ * as they would be if they were all defined up front.
+ */
+public class CommandClassLoader extends ClassLoader implements ClassDefiner {
+
+    private final Map<String, byte[]> definitions;
+    private final AtomicLong definedBytes = new AtomicLong();
+    private int definedCount;
+
+    /**
+     * @param definitions class definitions keyed by class name
+     */
+    public CommandClassLoader(ClassLoader parent, Map<String, byte[]> definitions) {
+        super(parent);
+        this.definitions = new HashMap<String, byte[]>(definitions);
+    }
+
+    /**
+     * Creates a loader for the given class definitions, keyed by the class names read from them.
+     *
+     * @return the loader, or null if different definitions are for classes with the same name
+     */
+    public static CommandClassLoader create(ClassLoader parent, List<byte[]> definitions) {
+        Map<String, byte[]> byName = new HashMap<String, byte[]>();
+        for (byte[] definition : definitions) {
+            byte[] existing = byName.put(getClassName(definition), definition);
+            if (existing != null && existing != definition) {
+                return null;
+            }
+        }
+        return new CommandClassLoader(parent, byName);
+    }
+
+    /**
+     * The number of classes that have been defined so far.
+     */
+    public synchronized int getDefinedCount() {
+        return definedCount;
+    }
+
+    /**
+     * The total size of the class definitions that have been defined so far.
+     */
+    public long getDefinedBytes() {
+        return definedBytes.get();
+    }
+
+    AtomicLong getDefinedBytesCounter() {
+        return definedBytes;
+    }
+
+    /**
+     * The number of classes that have not been asked for yet.
+     */
+    public synchronized int getUndefinedCount() {
+        return definitions.size();
+    }
+
+    /**
+     * Defines the class of the given definition now, without going through reflection.
+     *
+     * @throws LinkageError if the class has already been defined
+     */
+    public synchronized Class<?> define(byte[] definition) {
+        String name = getClassName(definition);
+        definitions.remove(name);
+        return defineClass(name, definition);
+    }
+
+    @Override
+    protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        Class<?> clazz = findLoadedClass(name);
+        if (clazz == null && definitions.containsKey(name)) {
+            clazz = findClass(name);
+        }
+        if (clazz == null) {
+            return super.loadClass(name, resolve);
+        }
+        if (resolve) {
+            resolveClass(clazz);
+        }
+        return clazz;
+    }
+
+    @Override
+    protected synchronized Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] definition = definitions.remove(name);
+        if (definition == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, definition);
+    }
+
+    private Class<?> defineClass(String name, byte[] definition) {
+        MetricsListener metrics = Metrics.getListener();
+        long start = System.nanoTime();
+        Class<?> clazz = defineClass(name, definition, 0, definition.length);
+        ++definedCount;
+        definedBytes.addAndGet(definition.length);
+        metrics.time(Phase.DEFINE_CLASSES, System.nanoTime() - start);
+        metrics.bytes(Phase.DEFINE_CLASSES, definition.length);
+        return clazz;
+    }
+
+    /**
+     * Reads the name of the class from its class definition (i.e. the this_class entry of the class file).
+     *
+     * @throws IllegalArgumentException if the definition is not a valid class file
+     */
+    public static String getClassName(byte[] definition) {
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(definition));
+            if (input.readInt() != 0xCAFEBABE) {
+                throw new IllegalArgumentException("Not a class file");
+            }
+            input.readUnsignedShort(); // minor version
+            input.readUnsignedShort(); // major version
+
+            int constantCount = input.readUnsignedShort();
+            String[] utf8s = new String[constantCount];
+            int[] classNameIndexes = new int[constantCount];
+            for (int i = 1; i < constantCount; ++i) {
+                int tag = input.readUnsignedByte();
+                switch (tag) {
+                    case 1: // Utf8
+                        utf8s[i] = input.readUTF();
+                        break;
+                    case 7: // Class
+                        classNameIndexes[i] = input.readUnsignedShort();
+                        break;
+                    case 8: // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        input.skipBytes(2);
+                        break;
+                    case 15: // MethodHandle
+                        input.skipBytes(3);
+                        break;
+                    case 3: // Integer
+                    case 4: // Float
+                    case 9: // Fieldref
+                    case 10: // Methodref
+                    case 11: // InterfaceMethodref
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        input.skipBytes(4);
+                        break;
+                    case 5: // Long
+                    case 6: // Double
+                        input.skipBytes(8);
+                        ++i; // takes two entries
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown constant pool tag: " + tag);
+                }
+            }
+
+            input.readUnsignedShort(); // access flags
+            String internalName = utf8s[classNameIndexes[input.readUnsignedShort()]];
+            return internalName.replace('/', '.');
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Not a valid class file", e);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Not a valid class file", e);
+        }
+    }
+
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.remotecontrol.server;
+
+import io.remotecontrol.groovy.ClosureCommand;
+import io.remotecontrol.util.DigestUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the class loaders that the classes of closure commands are defined in, keyed by a digest of the class bytes
+ * (or of the class digests, when the commands carry them).
+ *
+ * All of the commands of a chain share one loader, in which each distinct class is defined once (closures that are chained
+ * together typically share supporting classes). Classes are only defined when they are first used (see {@link CommandClassLoader}). Chains that carry identical class definitions (e.g. the same closure being sent
+ * over and over) are instantiated against the same loader, so the loader creation and class definition is only paid for once.
+ * The least recently used loaders are evicted when the cache grows beyond its maximum size.
+ *
+ * As a consequence, commands with identical class definitions also share the static state of their closure classes (e.g. changes
+ * made to the metaclass of a closure class) for as long as their loader is cached, rather than each chain starting with
+ * fresh classes. Commands that rely on fresh static state should be given a cache with a maximum size of 0.
+ *
+ * A cache with a maximum size of 0 does not cache anything, and defines the classes in a new loader for each chain.
+ *
+ * The loaders that are created are tracked by a {@link CommandClassLoaderTracker}, whose budget is checked before each one is created.
+ * While the budget is exceeded, the least recently used loaders are evicted until the loaders that remain cached would fit in it,
+ * so that they can be collected instead of the cache itself holding the estimate over the budget.
+ */
+public class CommandClassLoaderCache {
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private final ClassLoader parentLoader;
+    private final int maxSize;
+    private final CommandClassLoaderTracker tracker;
+    private final Map<String, ClassLoader> loaders;
+
+    /**
+     * @param parentLoader the parent of the loaders that command classes are defined in
+     * @param maxSize the maximum number of loaders to retain
+     * @param tracker the tracker of the loaders that are created
+     */
+    public CommandClassLoaderCache(ClassLoader parentLoader, final int maxSize, CommandClassLoaderTracker tracker) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must not be negative");
+        }
+
+        this.parentLoader = parentLoader;
+        this.maxSize = maxSize;
+        this.tracker = tracker;
+        this.loaders = new LinkedHashMap<String, ClassLoader>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ClassLoader> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Creates a cache whose loaders are tracked by a tracker without a budget.
+     */
+    public CommandClassLoaderCache(ClassLoader parentLoader, int maxSize) {
+        this(parentLoader, maxSize, new CommandClassLoaderTracker());
+    }
+
+    /**
+     * Creates a cache that retains up to {@link #DEFAULT_MAX_SIZE} loaders.
+     */
+    public CommandClassLoaderCache(ClassLoader parentLoader) {
+        this(parentLoader, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Returns a loader that the root and supporting classes of the given command have been defined in.
+     *
+     * @return the loader, or null if the classes cannot share a loader (i.e. different classes have the same name)
+     */
+    public ClassLoader getLoader(ClosureCommand command) {
+        return getLoader(Collections.singletonList(command));
+    }
+
+    /**
+     * Returns a loader that the root and supporting classes of all of the given commands have been defined in.
+     *
+     * @return the loader, or null if the classes cannot share a loader (i.e. different classes have the same name)
+     */
+    public ClassLoader getLoader(List<? extends ClosureCommand> commands) {
+        if (maxSize == 0) {
+            return defineClasses(commands);
+        }
+
+        String key = toKey(commands);
+        synchronized (loaders) {
+            ClassLoader loader = loaders.get(key);
+            if (loader != null) {
+                return loader;
+            }
+        }
+
+        // Define outside of the lock, if another thread beats us to it we just use theirs
+        ClassLoader loader = defineClasses(commands);
+        if (loader == null) {
+            return null;
+        }
+
+        synchronized (loaders) {
+            ClassLoader existing = loaders.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            loaders.put(key, loader);
+        }
+
+        return loader;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public CommandClassLoaderTracker getTracker() {
+        return tracker;
+    }
+
+    /**
+     * The number of loaders currently cached.
+     */
+    public int size() {
+        synchronized (loaders) {
+            return loaders.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (loaders) {
+            loaders.clear();
+        }
+    }
+
+    /**
+     * The key of the loader for the given commands.
+     *
+     * The class digests of the commands are used if they all have them, so callers must only pass digests that have been
+     * checked against the class definitions, as the closure command runner does.
+     */
+    protected String toKey(List<? extends ClosureCommand> commands) {
+        boolean hasDigests = true;
+        for (ClosureCommand command : commands) {
+            hasDigests = hasDigests && command.hasDigests();
+        }
+
+        List<byte[]> parts = new ArrayList<byte[]>();
+        if (hasDigests) {
+            Set<String> digests = new LinkedHashSet<String>();
+            for (ClosureCommand command : commands) {
+                digests.addAll(command.getClassDigests());
+            }
+            for (String digest : digests) {
+                parts.add(digest.getBytes());
+            }
+        } else {
+            parts.addAll(distinctClassDefinitions(commands));
+        }
+        return DigestUtil.digest(parts);
+    }
+
+    /**
+     * Creates a new loader that defines the distinct classes of the commands as they are asked for.
+     *
+     * @return the loader, or null if different classes have the same name
+     * @throws io.remotecontrol.CommandRejectedException if the tracker's budget is exceeded
+     */
+    protected ClassLoader defineClasses(List<? extends ClosureCommand> commands) {
+        if (tracker.isOverBudget()) {
+            evictOverBudget();
+        }
+        tracker.checkBudget();
+        CommandClassLoader loader = CommandClassLoader.create(parentLoader, distinctClassDefinitions(commands));
+        if (loader != null) {
+            tracker.track(loader);
+        }
+        return loader;
+    }
+
+    /**
+     * Evicts the least recently used loaders until the estimated Metaspace of the evicted loaders covers the amount that the budget is exceeded by.
+     */
+    private void evictOverBudget() {
+        long excess = tracker.getEstimatedMetaspace() - tracker.getMaxEstimatedMetaspace();
+        synchronized (loaders) {
+            Iterator<ClassLoader> iterator = loaders.values().iterator();
+            while (excess > 0 && iterator.hasNext()) {
+                ClassLoader loader = iterator.next();
+                iterator.remove();
+                if (loader instanceof CommandClassLoader) {
+                    excess -= ((CommandClassLoader) loader).getDefinedBytes() * CommandClassLoaderTracker.METASPACE_PER_CLASS_BYTE;
+                }
+            }
+        }
+    }
+
+    private static List<byte[]> distinctClassDefinitions(List<? extends ClosureCommand> commands) {
+        Map<ClassDefinition, byte[]> distinct = new LinkedHashMap<ClassDefinition, byte[]>();
+        for (ClosureCommand command : commands) {
+            distinct.put(new ClassDefinition(command.getRoot()), command.getRoot());
+            for (byte[] bytes : command.getSupports()) {
+                distinct.put(new ClassDefinition(bytes), bytes);
+            }
+        }
+        return new ArrayList<byte[]>(distinct.values());
+    }
+
+    private static class ClassDefinition {
+        private final byte[] bytes;
+        private final int hashCode;
+
+        ClassDefinition(byte[] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ClassDefinition && hashCode == ((ClassDefinition) o).hashCode && Arrays.equals(bytes, ((ClassDefinition) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.server;
+
+import io.remotecontrol.CommandRejectedException;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the command class loaders that are still alive, via weak references, and estimates the Metaspace their classes use.
+ *
+ * A loader is alive until it is garbage collected, which can be long after it has been evicted from the {@link CommandClassLoaderCache}
+ * if something still references one of its classes or their instances (e.g. a value kept in storage). More live loaders than
+ * the cache holds is therefore a sign of such leaks.
+ *
+ * The estimate is {@link #METASPACE_PER_CLASS_BYTE} times the size of the class files that the live loaders have defined. It is
+ * only a rough guide, as the actual size depends on the JVM and on the classes.
+ *
+ * A tracker can be given a budget for the estimate. While it is exceeded, {@link #checkBudget()} waits up to a configurable time
+ * for loaders to be collected, and then throws a {@link CommandRejectedException}. As classes are only unloaded by a full
+ * collection, a garbage collection is requested too, unless that is disabled. Only one collection is requested per wait time,
+ * however many chains are waiting, so that a budget that stays exceeded under load does not cause a collection per chain.
+ */
+public class CommandClassLoaderTracker {
+
+    /**
+     * The estimated Metaspace used for each byte of class file.
+     */
+    public static final int METASPACE_PER_CLASS_BYTE = 2;
+
+    private static final long POLL_MILLIS = 50;
+
+    private final long maxEstimatedMetaspace;
+    private final long waitMillis;
+    private final boolean requestGc;
+    private final AtomicLong lastGcRequest;
+    private final ReferenceQueue<CommandClassLoader> queue = new ReferenceQueue<CommandClassLoader>();
+    private final Set<LoaderReference> references = new HashSet<LoaderReference>();
+    private long trackedCount;
+
+    /**
+     * Creates a tracker that requests a garbage collection when the budget is exceeded.
+     *
+     * @param maxEstimatedMetaspace the budget for the estimated Metaspace use, or 0 for no budget
+     * @param waitMillis how long to wait for loaders to be collected when the budget is exceeded, before rejecting
+     */
+    public CommandClassLoaderTracker(long maxEstimatedMetaspace, long waitMillis) {
+        this(maxEstimatedMetaspace, waitMillis, true);
+    }
+
+    /**
+     * @param maxEstimatedMetaspace the budget for the estimated Metaspace use, or 0 for no budget
+     * @param waitMillis how long to wait for loaders to be collected when the budget is exceeded, before rejecting
+     * @param requestGc whether to request a garbage collection (at most once per wait time) when the budget is exceeded,
+     * rather than only waiting for one to happen
+     */
+    public CommandClassLoaderTracker(long maxEstimatedMetaspace, long waitMillis, boolean requestGc) {
+        if (maxEstimatedMetaspace < 0) {
+            throw new IllegalArgumentException("maxEstimatedMetaspace must not be negative");
+        }
+        if (waitMillis < 0) {
+            throw new IllegalArgumentException("waitMillis must not be negative");
+        }
+
+        this.maxEstimatedMetaspace = maxEstimatedMetaspace;
+        this.waitMillis = waitMillis;
+        this.requestGc = requestGc;
+        this.lastGcRequest = new AtomicLong(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(waitMillis));
+    }
+
+    /**
+     * Creates a tracker without a budget.
+     */
+    public CommandClassLoaderTracker() {
+        this(0, 0);
+    }
+
+    public synchronized void track(CommandClassLoader loader) {
+        expunge();
+        references.add(new LoaderReference(loader, queue));
+        ++trackedCount;
+    }
+
+    /**
+     * The number of tracked loaders that have not been garbage collected.
+     */
+    public synchronized int getLiveCount() {
+        expunge();
+        return references.size();
+    }
+
+    /**
+     * The number of loaders tracked since this tracker was created.
+     */
+    public synchronized long getTrackedCount() {
+        return trackedCount;
+    }
+
+    /**
+     * The estimated Metaspace used by the classes of the live loaders, in bytes.
+     */
+    public synchronized long getEstimatedMetaspace() {
+        expunge();
+        long definedBytes = 0;
+        for (LoaderReference reference : references) {
+            definedBytes += reference.definedBytes.get();
+        }
+        return definedBytes * METASPACE_PER_CLASS_BYTE;
+    }
+
+    public long getMaxEstimatedMetaspace() {
+        return maxEstimatedMetaspace;
+    }
+
+    /**
+     * Whether the tracker has a budget that the estimated Metaspace currently exceeds.
+     */
+    public boolean isOverBudget() {
+        return maxEstimatedMetaspace != 0 && getEstimatedMetaspace() > maxEstimatedMetaspace;
+    }
+
+    /**
+     * Returns once the estimated Metaspace is within the budget, waiting for loaders to be collected if it is not.
+     *
+     * @throws CommandRejectedException if the budget is still exceeded after waiting
+     */
+    public void checkBudget() {
+        if (maxEstimatedMetaspace == 0) {
+            return;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        long estimate = getEstimatedMetaspace();
+        if (estimate > maxEstimatedMetaspace && waitMillis > 0) {
+            maybeRequestGc();
+        }
+        while (estimate > maxEstimatedMetaspace) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                throw new CommandRejectedException("The estimated Metaspace used by command classes (" + estimate + " bytes) exceeds the budget of " + maxEstimatedMetaspace + " bytes");
+            }
+
+            try {
+                // in slices, as loaders collected while waiting may be dequeued by another waiting chain
+                Reference<? extends CommandClassLoader> collected = queue.remove(Math.min(remainingMillis, POLL_MILLIS));
+                if (collected != null) {
+                    release(collected);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CommandRejectedException("Interrupted while waiting for command class loaders to be collected");
+            }
+            estimate = getEstimatedMetaspace();
+        }
+    }
+
+    /**
+     * Requests a garbage collection, unless that is disabled or one has been requested within the wait time.
+     */
+    private void maybeRequestGc() {
+        if (!requestGc) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long last = lastGcRequest.get();
+        if (now - last >= TimeUnit.MILLISECONDS.toNanos(waitMillis) && lastGcRequest.compareAndSet(last, now)) {
+            collectGarbage();
+        }
+    }
+
+    /**
+     * Requests a garbage collection. Subclasses can override this to request it some other way.
+     */
+    protected void collectGarbage() {
+        System.gc();
+    }
+
+    private synchronized void release(Reference<? extends CommandClassLoader> reference) {
+        references.remove(reference);
+    }
+
+    private void expunge() {
+        Reference<? extends CommandClassLoader> reference = queue.poll();
+        while (reference != null) {
+            references.remove(reference);
+            reference = queue.poll();
+        }
+    }
+
+    private static class LoaderReference extends WeakReference<CommandClassLoader> {
+        private final AtomicLong definedBytes;
+
+        LoaderReference(CommandClassLoader loader, ReferenceQueue<CommandClassLoader> queue) {
+            super(loader, queue);
+            this.definedBytes = loader.getDefinedBytesCounter();
+        }
+    }
+
+}
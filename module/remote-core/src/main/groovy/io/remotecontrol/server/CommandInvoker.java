@@ -17,10 +17,12 @@
 package io.remotecontrol.server;
 
 import groovy.lang.Closure;
-import groovy.lang.GroovyClassLoader;
 import io.remotecontrol.groovy.ClosureCommand;
 import io.remotecontrol.RemoteControlException;
 import io.remotecontrol.SerializationUtil;
+import io.remotecontrol.metrics.Metrics;
+import io.remotecontrol.metrics.MetricsListener;
+import io.remotecontrol.metrics.Phase;
 import org.codehaus.groovy.runtime.InvokerInvocationException;
 
 import java.io.IOException;
@@ -29,23 +31,49 @@ public class CommandInvoker {
 
     private final ClassLoader parentLoader;
     private final ClosureCommand command;
+    private final CommandClassLoaderCache classLoaderCache;
+    private final ClassLoader commandLoader;
 
-    public CommandInvoker(ClassLoader parentLoader, ClosureCommand command) {
+    /**
+     * @param commandLoader the loader that the command's classes have already been defined in, or null to get one from the cache
+     */
+    public CommandInvoker(ClassLoader parentLoader, ClosureCommand command, CommandClassLoaderCache classLoaderCache, ClassLoader commandLoader) {
         this.parentLoader = parentLoader;
         this.command = command;
+        this.classLoaderCache = classLoaderCache;
+        this.commandLoader = commandLoader;
+    }
+
+    public CommandInvoker(ClassLoader parentLoader, ClosureCommand command, CommandClassLoaderCache classLoaderCache) {
+        this(parentLoader, command, classLoaderCache, null);
+    }
+
+    /**
+     * Creates an invoker that defines the command's classes in a new class loader.
+     */
+    public CommandInvoker(ClassLoader parentLoader, ClosureCommand command) {
+        this(parentLoader, command, new CommandClassLoaderCache(parentLoader, 0));
     }
 
     public Object invokeAgainst(Object delegate, Object argument) throws Throwable {
+        MetricsListener metrics = Metrics.getListener();
         try {
+            long start = System.nanoTime();
             Closure instance = instantiate();
+            metrics.time(Phase.INSTANTIATE, System.nanoTime() - start);
 
             instance.setResolveStrategy(Closure.DELEGATE_ONLY);
             instance.setDelegate(delegate);
 
-            if (instance.getMaximumNumberOfParameters() < 1) {
-                return instance.call();
-            } else {
-                return instance.call(argument);
+            start = System.nanoTime();
+            try {
+                if (instance.getMaximumNumberOfParameters() < 1) {
+                    return instance.call();
+                } else {
+                    return instance.call(argument);
+                }
+            } finally {
+                metrics.time(Phase.EXECUTE, System.nanoTime() - start);
             }
         } catch (Throwable thrown) {
             // If the server and client do not share the groovy classes, we get this
@@ -60,11 +88,9 @@ public class CommandInvoker {
     }
 
     protected Closure<?> instantiate() throws IOException {
-        final GroovyClassLoader classLoader = new GroovyClassLoader(parentLoader);
-        SerializationUtil.defineClass(classLoader, command.getRoot());
-
-        for (byte[] bytes : command.getSupports()) {
-            SerializationUtil.defineClass(classLoader, bytes);
+        ClassLoader classLoader = commandLoader == null ? classLoaderCache.getLoader(command) : commandLoader;
+        if (classLoader == null) {
+            throw new RemoteControlException("The classes of the command cannot be defined, as different class definitions in it are for classes with the same name");
         }
 
         try {
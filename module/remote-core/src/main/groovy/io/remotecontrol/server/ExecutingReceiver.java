@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.server;
+
+import io.remotecontrol.CommandRejectedException;
+import io.remotecontrol.CommandTimeoutException;
+import io.remotecontrol.codec.Codec;
+import io.remotecontrol.codec.Codecs;
+import io.remotecontrol.result.ResultFactory;
+import io.remotecontrol.result.impl.DefaultResultFactory;
+import io.remotecontrol.util.IoUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wraps a receiver so that command chains are executed by an executor, instead of by the thread that received them.
+ *
+ * This bounds how many command chains execute at once, and how many can wait to execute. When the executor rejects a chain
+ * the result is a {@link CommandRejectedException} being thrown. If a time limit is set, chains that do not complete in
+ * time are cancelled (by interrupting the executing thread) and the result is a {@link CommandTimeoutException} being thrown.
+ * A cancelled chain that ignores the interrupt keeps running, and keeps its executor thread, so with a bounded executor
+ * later chains may be rejected until it completes.
+ *
+ * Any executor service can be used, e.g. one that creates a new thread for each command chain.
+ */
+public class ExecutingReceiver implements Receiver {
+
+    private final Receiver delegate;
+    private final ExecutorService executor;
+    private final ResultFactory resultFactory;
+    private final long timeoutMillis;
+
+    /**
+     * @param delegate the receiver that executes the command chains
+     * @param executor the executor that the delegate is invoked by
+     * @param resultFactory used to create the results for rejected and timed out command chains
+     * @param timeoutMillis the maximum time a command chain may take to execute, or 0 for no limit
+     */
+    public ExecutingReceiver(Receiver delegate, ExecutorService executor, ResultFactory resultFactory, long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("timeoutMillis must not be negative");
+        }
+
+        this.delegate = delegate;
+        this.executor = executor;
+        this.resultFactory = resultFactory;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Creates a receiver that executes with a fixed number of threads and a bounded queue.
+     *
+     * @param threads the number of command chains that can execute at once
+     * @param queueSize the number of command chains that can wait to be executed
+     * @see #createBoundedExecutor(int, int)
+     */
+    public ExecutingReceiver(Receiver delegate, int threads, int queueSize, long timeoutMillis) {
+        this(delegate, createBoundedExecutor(threads, queueSize), new DefaultResultFactory(), timeoutMillis);
+    }
+
+    /**
+     * Creates an executor with a fixed number of daemon threads, that rejects tasks when all threads are busy and the queue is full.
+     */
+    public static ExecutorService createBoundedExecutor(int threads, int queueSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        if (queueSize < 0) {
+            throw new IllegalArgumentException("queueSize must not be negative");
+        }
+
+        BlockingQueue<Runnable> queue = queueSize == 0 ? new SynchronousQueue<Runnable>() : new ArrayBlockingQueue<Runnable>(queueSize);
+        final AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "remote-control-receiver-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void execute(InputStream commandStream, OutputStream resultStream) throws IOException {
+        // Read the command here, so that the executing thread never touches the caller's streams
+        final PushbackInputStream command = new PushbackInputStream(new ByteArrayInputStream(IoUtil.read(commandStream)), Codecs.SIGNATURE_LENGTH);
+        Codec codec = Codecs.detect(command);
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+        Future<Void> future;
+        try {
+            future = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    delegate.execute(command, result);
+                    return null;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            codec.writeResult(resultFactory.forThrown(new CommandRejectedException("The receiver is too busy to execute the command chain")), resultStream);
+            return;
+        }
+
+        try {
+            if (timeoutMillis == 0) {
+                future.get();
+            } else {
+                future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            codec.writeResult(resultFactory.forThrown(new CommandTimeoutException("The command chain did not complete within " + timeoutMillis + "ms")), resultStream);
+            return;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the command chain to execute");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IllegalStateException(cause);
+            }
+        }
+
+        result.writeTo(resultStream);
+    }
+
+    /**
+     * Stops accepting command chains, and shuts down the executor.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+}
@@ -19,16 +19,23 @@ package io.remotecontrol.server;
 import io.remotecontrol.Command;
 import io.remotecontrol.CommandChain;
 import io.remotecontrol.RemoteControlException;
-import io.remotecontrol.SerializationUtil;
+import io.remotecontrol.codec.Codec;
+import io.remotecontrol.codec.Codecs;
 import io.remotecontrol.result.Result;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.util.Arrays;
 import java.util.List;
 
-public class MultiTypeReceiver implements Receiver {
+/**
+ * Executes command chains with the first runner that accepts the chain's command type.
+ *
+ * The result is written with the same codec that the command chain was written with.
+ */
+public class MultiTypeReceiver implements CommandChainReceiver {
 
     private final ClassLoader classLoader;
     private final List<CommandRunner<?>> runners;
@@ -40,18 +47,25 @@ public class MultiTypeReceiver implements Receiver {
 
     @Override
     public void execute(InputStream commandStream, OutputStream resultStream) throws IOException {
+        PushbackInputStream input = new PushbackInputStream(commandStream, Codecs.SIGNATURE_LENGTH);
+        Codec codec = Codecs.detect(input);
+
         CommandChain<?> commandChain;
         try {
-            commandChain = SerializationUtil.deserialize(CommandChain.class, commandStream, classLoader);
+            commandChain = codec.readCommandChain(input, classLoader);
         } catch (ClassNotFoundException e) {
             throw RemoteControlException.classNotFoundOnServer(e);
         }
 
+        codec.writeResult(execute(commandChain), resultStream);
+    }
+
+    @Override
+    public Result execute(CommandChain<?> commandChain) {
         for (CommandRunner<?> runner : runners) {
             Result result = maybeInvoke(commandChain, runner);
             if (result != null) {
-                SerializationUtil.serialize(result, resultStream);
-                return;
+                return result;
             }
         }
 
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.server;
+
+import io.remotecontrol.RemoteControlException;
+import io.remotecontrol.result.Result;
+import io.remotecontrol.result.ResultFactory;
+import io.remotecontrol.result.impl.DefaultStreamResult;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The result streams that are open on a receiver, from which clients pull elements one chunk at a time.
+ *
+ * A stream is iterated in the same way that Groovy iterates the value (so collections, arrays, maps, iterators, enumerations and
+ * anything else with an {@code iterator()} method can be streamed), and only as far as the chunks that have been requested. It is
+ * closed when its last element has been returned, when iterating it fails, when the client closes it, or when it has not been
+ * accessed for the idle timeout. If iterating fails part way through a chunk, the elements before the failure are returned and the
+ * failure is the result of the next request. Values (or their iterators) that are {@link Closeable} are closed along with the stream.
+ *
+ * Idle streams are swept lazily, whenever a stream is opened or a chunk is requested, so a receiver that is not asked for
+ * streams at all keeps them open until then. {@link #closeIdle()} can be called periodically to sweep them regardless.
+ *
+ * Instances are safe to share between threads.
+ */
+public class ResultStreams {
+
+    public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000;
+
+    private final ResultFactory resultFactory;
+    private final long idleTimeout;
+    private final AtomicLong lastId = new AtomicLong();
+    private final ConcurrentMap<Long, Stream> streams = new ConcurrentHashMap<Long, Stream>();
+
+    /**
+     * @param resultFactory the factory for the results of the chunks
+     * @param idleTimeout the number of milliseconds after which a stream that is not accessed is closed
+     */
+    public ResultStreams(ResultFactory resultFactory, long idleTimeout) {
+        this.resultFactory = resultFactory;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Creates a registry that closes streams that are not accessed for {@link #DEFAULT_IDLE_TIMEOUT} milliseconds.
+     */
+    public ResultStreams(ResultFactory resultFactory) {
+        this(resultFactory, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Opens a stream over the elements of the given value, returning its id.
+     */
+    public long open(Object value) {
+        closeIdle();
+
+        Iterator<?> iterator = value == null ? Collections.emptyList().iterator() : InvokerHelper.asIterator(value);
+        long id = lastId.incrementAndGet();
+        streams.put(id, new Stream(value, iterator));
+        return id;
+    }
+
+    /**
+     * Returns the result for the next chunk of the given stream.
+     *
+     * The result for the exception is returned if the stream is unknown (e.g. it has been closed) or iterating it fails.
+     */
+    public Result next(long id, int maxElements) {
+        closeIdle();
+
+        Stream stream = streams.get(id);
+        if (stream == null) {
+            return resultFactory.forThrown(new RemoteControlException("Result stream " + id + " is not open (it may have been idle for too long)"));
+        }
+
+        List<Object> elements = new ArrayList<Object>(maxElements);
+        boolean last;
+        synchronized (stream) {
+            stream.lastAccessed = System.currentTimeMillis();
+            if (stream.failure != null) {
+                close(id);
+                return resultFactory.forThrown(stream.failure);
+            }
+
+            try {
+                while (elements.size() < maxElements && stream.iterator.hasNext()) {
+                    elements.add(stream.iterator.next());
+                }
+                last = !stream.iterator.hasNext();
+            } catch (Throwable throwable) {
+                if (elements.isEmpty()) {
+                    close(id);
+                    return resultFactory.forThrown(throwable);
+                }
+
+                // return the elements that were produced, and fail the next request
+                stream.failure = throwable;
+                last = false;
+            }
+        }
+
+        if (last) {
+            close(id);
+        }
+        return new DefaultStreamResult(id, resultFactory.forValue(elements), last);
+    }
+
+    /**
+     * Closes the given stream.
+     *
+     * @return whether the stream was open
+     */
+    public boolean close(long id) {
+        Stream stream = streams.remove(id);
+        if (stream == null) {
+            return false;
+        }
+
+        stream.close();
+        return true;
+    }
+
+    /**
+     * Closes the streams that have not been accessed for the idle timeout.
+     */
+    public void closeIdle() {
+        long threshold = System.currentTimeMillis() - idleTimeout;
+        for (Map.Entry<Long, Stream> entry : streams.entrySet()) {
+            if (entry.getValue().lastAccessed < threshold) {
+                close(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * The number of open streams.
+     */
+    public int size() {
+        return streams.size();
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    private static class Stream {
+        private final Object value;
+        private final Iterator<?> iterator;
+        private volatile long lastAccessed = System.currentTimeMillis();
+        private Throwable failure;
+
+        Stream(Object value, Iterator<?> iterator) {
+            this.value = value;
+            this.iterator = iterator;
+        }
+
+        void close() {
+            closeQuietly(iterator);
+            if (value != iterator) {
+                closeQuietly(value);
+            }
+        }
+
+        private static void closeQuietly(Object object) {
+            if (object instanceof Closeable) {
+                try {
+                    ((Closeable) object).close();
+                } catch (IOException ignore) {
+                    // nothing more we can do
+                }
+            }
+        }
+    }
+
+}
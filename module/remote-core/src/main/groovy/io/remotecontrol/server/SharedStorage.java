@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.server;
+
+import groovy.lang.Closure;
+import groovy.lang.GroovyObjectSupport;
+import groovy.lang.MissingPropertyException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Name/value storage that is shared by the contexts of many command chains, so that commands can keep expensive server side
+ * objects between requests.
+ *
+ * Instances are safe to use from many threads at once. {@link #getOrCreate(String, Closure)} creates a value at most once,
+ * no matter how many chains ask for it at the same time. Chains that ask for a value while it is being created wait for it,
+ * but creating one value does not hold up the creation of values with other names.
+ *
+ * @see StorageContextFactory
+ */
+public class SharedStorage extends GroovyObjectSupport {
+
+    private static final Object NULL = new Object();
+
+    private final ConcurrentMap<String, Object> storage = new ConcurrentHashMap<String, Object>();
+    private final ConcurrentMap<String, FutureTask<Object>> creations = new ConcurrentHashMap<String, FutureTask<Object>>();
+
+    public boolean contains(String name) {
+        return storage.containsKey(name);
+    }
+
+    /**
+     * Returns the value with the given name, or null if there is none.
+     */
+    public Object get(String name) {
+        return unmask(storage.get(name));
+    }
+
+    public void put(String name, Object value) {
+        storage.put(name, mask(value));
+    }
+
+    /**
+     * Returns the value with the given name, calling the creator to create it if there is none.
+     */
+    public Object getOrCreate(final String name, final Closure<?> creator) {
+        Object value = storage.get(name);
+        if (value != null) {
+            return unmask(value);
+        }
+
+        FutureTask<Object> creation = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() {
+                // the value may have been created since it was looked up
+                Object created = storage.get(name);
+                if (created == null) {
+                    created = mask(creator.call());
+                    storage.put(name, created);
+                }
+                return created;
+            }
+        });
+
+        FutureTask<Object> existing = creations.putIfAbsent(name, creation);
+        if (existing == null) {
+            try {
+                creation.run();
+            } finally {
+                creations.remove(name, creation);
+            }
+        } else {
+            creation = existing;
+        }
+
+        return unmask(getCreated(creation));
+    }
+
+    private static Object getCreated(FutureTask<Object> creation) {
+        try {
+            return creation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for a shared value to be created", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    public Object remove(String name) {
+        return unmask(storage.remove(name));
+    }
+
+    public void clear() {
+        storage.clear();
+    }
+
+    public int size() {
+        return storage.size();
+    }
+
+    public Object propertyMissing(String name) {
+        Object value = storage.get(name);
+        if (value == null) {
+            throw new MissingPropertyException("No property named \'" + name + "\' is available in the shared scope");
+        }
+        return unmask(value);
+    }
+
+    public void propertyMissing(String name, Object value) {
+        put(name, value);
+    }
+
+    private static Object mask(Object value) {
+        return value == null ? NULL : value;
+    }
+
+    private static Object unmask(Object value) {
+        return value == NULL ? null : value;
+    }
+
+}
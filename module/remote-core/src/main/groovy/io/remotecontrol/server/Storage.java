@@ -3,28 +3,70 @@ package io.remotecontrol.server;
 import groovy.lang.GroovyObjectSupport;
 import groovy.lang.MissingPropertyException;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * Used for abitrary name/value storage, but throws MPE on get of non existant property.
+ *
+ * Storage can be created over a seed, which values that have not been set are read from (the seed is never written to),
+ * and with a {@link SharedStorage shared scope}, which values that are in neither are read from and that is available as
+ * the {@code shared} property.
  */
 public class Storage extends GroovyObjectSupport {
 
-    private final Map<String, Object> storage;
+    private static final String SHARED_PROPERTY_NAME = "shared";
+
+    private Map<String, Object> storage;
+    private final Map<String, Object> seed;
+    private final SharedStorage shared;
 
     public Storage(Map<String, Object> storage) {
+        this(storage, Collections.<String, Object>emptyMap(), null);
+    }
+
+    /**
+     * @param storage the map to store values in, or null to create one when the first value is set
+     * @param seed the values to use for names that have not been set
+     * @param shared the shared scope, may be null
+     */
+    public Storage(Map<String, Object> storage, Map<String, Object> seed, SharedStorage shared) {
         this.storage = storage;
+        this.seed = seed;
+        this.shared = shared;
+    }
+
+    /**
+     * The shared scope, if this storage has one. Otherwise the value named "shared" is returned as for any other name.
+     */
+    public Object getShared() {
+        return shared == null ? propertyMissing(SHARED_PROPERTY_NAME) : shared;
+    }
+
+    public void setShared(Object value) {
+        if (shared != null) {
+            throw new IllegalStateException("The shared scope cannot be replaced");
+        }
+        propertyMissing(SHARED_PROPERTY_NAME, value);
     }
 
     public Object propertyMissing(String name) {
-        if (storage.containsKey(name)) {
+        if (storage != null && storage.containsKey(name)) {
             return storage.get(name);
+        } else if (seed.containsKey(name)) {
+            return seed.get(name);
+        } else if (shared != null && shared.contains(name)) {
+            return shared.get(name);
         } else {
             throw new MissingPropertyException("No property named \'" + name + "\' is available in the context");
         }
     }
 
     public void propertyMissing(String name, Object value) {
+        if (storage == null) {
+            storage = new LinkedHashMap<String, Object>();
+        }
         storage.put(name, value);
     }
 
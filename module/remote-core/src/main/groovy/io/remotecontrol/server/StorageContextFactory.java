@@ -4,6 +4,7 @@ import groovy.lang.Closure;
 import io.remotecontrol.CommandChain;
 import io.remotecontrol.groovy.server.ContextFactory;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -12,24 +13,63 @@ import java.util.Map;
  *
  * Note that this class is abstract, but provides static methods to produce context factory instances.
  *
+ * Each variant can be given a {@link SharedStorage}, which all of the storage objects it creates fall back to and expose as the
+ * {@code shared} property. Giving the same shared storage to several factories shares it between them.
+ *
  * @see io.remotecontrol.groovy.server.ContextFactory
  * @see io.remotecontrol.server.Storage
  * @see io.remotecontrol.server.Receiver
  */
 public abstract class StorageContextFactory implements ContextFactory {
 
+    protected final SharedStorage shared;
+
+    protected StorageContextFactory(SharedStorage shared) {
+        this.shared = shared;
+    }
+
+    /**
+     * Creates a factory whose contexts have no shared storage.
+     */
+    protected StorageContextFactory() {
+        this(null);
+    }
+
+    /**
+     * The shared storage of the contexts, or null if they have none.
+     */
+    public SharedStorage getShared() {
+        return shared;
+    }
+
     /**
      * Creates a factory that generates storage objects with no initial values.
      */
     public static StorageContextFactory withEmptyStorage() {
-        return new WithEmptyStorage();
+        return withEmptyStorage(null);
+    }
+
+    /**
+     * Creates a factory that generates storage objects with no initial values, which fall back to the given shared storage.
+     */
+    public static StorageContextFactory withEmptyStorage(SharedStorage shared) {
+        return new WithEmptyStorage(shared);
     }
 
     /**
-     * Creates a factory that uses the given map as a seed. That is, the seed will be copied to a new map to be used as the storage for each request for a context.
+     * Creates a factory that uses the given map as a seed. That is, each storage object reads values that have not been set from a copy of the seed.
+     *
+     * The seed is copied once, so creating each storage object does not depend on the size of the seed.
      */
     public static StorageContextFactory withSeed(Map<String, Object> seed) {
-        return new WithSeed(seed);
+        return withSeed(seed, null);
+    }
+
+    /**
+     * Creates a factory that uses the given map as a seed, with storage objects that fall back to the given shared storage.
+     */
+    public static StorageContextFactory withSeed(Map<String, Object> seed, SharedStorage shared) {
+        return new WithSeed(seed, shared);
     }
 
     /**
@@ -37,12 +77,23 @@ public abstract class StorageContextFactory implements ContextFactory {
      * implementations should take care to implement their own thread safety as they may be invoked by different threads at any given time.
      */
     public static StorageContextFactory withGenerator(Closure generator) {
-        return new WithGenerator(generator);
+        return withGenerator(generator, null);
+    }
+
+    /**
+     * Creates a factory that calls the given generator closure to produce a map to be used as the storage, with storage objects that fall back to the given shared storage.
+     */
+    public static StorageContextFactory withGenerator(Closure generator, SharedStorage shared) {
+        return new WithGenerator(generator, shared);
     }
 
     private static class WithEmptyStorage extends StorageContextFactory {
+        public WithEmptyStorage(SharedStorage shared) {
+            super(shared);
+        }
+
         public Storage getContext(CommandChain chain) {
-            return new Storage(new LinkedHashMap<String, Object>());
+            return new Storage(null, Collections.<String, Object>emptyMap(), shared);
         }
 
     }
@@ -50,12 +101,13 @@ public abstract class StorageContextFactory implements ContextFactory {
     private static class WithSeed extends StorageContextFactory {
         private final Map<String, Object> seed;
 
-        public WithSeed(Map<String, Object> seed) {
-            this.seed = new LinkedHashMap<String, Object>(seed);
+        public WithSeed(Map<String, Object> seed, SharedStorage shared) {
+            super(shared);
+            this.seed = Collections.unmodifiableMap(new LinkedHashMap<String, Object>(seed));
         }
 
         public Storage getContext(CommandChain chain) {
-            return new Storage(new LinkedHashMap<String, Object>(seed));
+            return new Storage(null, seed, shared);
         }
 
         public final Map<String, Object> getSeed() {
@@ -68,7 +120,8 @@ public abstract class StorageContextFactory implements ContextFactory {
         private final Closure generator;
 
 
-        public WithGenerator(Closure generator) {
+        public WithGenerator(Closure generator, SharedStorage shared) {
+            super(shared);
             this.generator = generator;
         }
 
@@ -85,7 +138,7 @@ public abstract class StorageContextFactory implements ContextFactory {
 
             if (storage instanceof Map) {
                 @SuppressWarnings("unchecked") Map<String, Object> cast = (Map<String, Object>) storage;
-                return new Storage(cast);
+                return new Storage(cast, Collections.<String, Object>emptyMap(), shared);
             } else {
                 throw new IllegalArgumentException("The generator did not return a map");
             }
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.server;
+
+import io.remotecontrol.CommandChain;
+import io.remotecontrol.StreamChunkCommand;
+import io.remotecontrol.result.Result;
+import io.remotecontrol.result.ResultFactory;
+
+/**
+ * Returns the next chunks of, or closes, the result streams opened by {@link StreamCommandRunner}.
+ */
+public class StreamChunkCommandRunner implements CommandRunner<StreamChunkCommand> {
+
+    private final ResultFactory resultFactory;
+    private final ResultStreams streams;
+
+    public StreamChunkCommandRunner(ResultFactory resultFactory, ResultStreams streams) {
+        this.resultFactory = resultFactory;
+        this.streams = streams;
+    }
+
+    @Override
+    public Class<StreamChunkCommand> getType() {
+        return StreamChunkCommand.class;
+    }
+
+    @Override
+    public Result run(CommandChain<StreamChunkCommand> commandChain) {
+        if (commandChain.getCommands().size() != 1) {
+            return resultFactory.forThrown(new IllegalArgumentException("a command chain can only contain one stream chunk command"));
+        }
+
+        StreamChunkCommand command = commandChain.getCommands().get(0);
+        if (command.isClose()) {
+            return resultFactory.forValue(streams.close(command.getStreamId()));
+        } else {
+            return streams.next(command.getStreamId(), command.getChunkSize());
+        }
+    }
+
+}
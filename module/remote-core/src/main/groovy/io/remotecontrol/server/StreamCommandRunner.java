@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.server;
+
+import io.remotecontrol.CommandChain;
+import io.remotecontrol.StreamCommand;
+import io.remotecontrol.result.Result;
+import io.remotecontrol.result.ResultFactory;
+import io.remotecontrol.result.StreamResult;
+
+/**
+ * Executes the command chains of {@link StreamCommand}s with another receiver, responding with the first chunk of the result stream.
+ *
+ * The receiver is expected to open a stream for the result of the chain, i.e. to produce its results with a {@link StreamingResultFactory}
+ * that uses the same streams.
+ */
+public class StreamCommandRunner implements CommandRunner<StreamCommand> {
+
+    private final CommandChainReceiver receiver;
+    private final ResultFactory resultFactory;
+    private final ResultStreams streams;
+
+    /**
+     * @param receiver the receiver that executes the chains of the stream commands
+     */
+    public StreamCommandRunner(CommandChainReceiver receiver, ResultFactory resultFactory, ResultStreams streams) {
+        this.receiver = receiver;
+        this.resultFactory = resultFactory;
+        this.streams = streams;
+    }
+
+    @Override
+    public Class<StreamCommand> getType() {
+        return StreamCommand.class;
+    }
+
+    @Override
+    public Result run(CommandChain<StreamCommand> commandChain) {
+        if (commandChain.getCommands().size() != 1) {
+            return resultFactory.forThrown(new IllegalArgumentException("a command chain can only contain one stream command"));
+        }
+
+        StreamCommand command = commandChain.getCommands().get(0);
+        Result result;
+        try {
+            result = receiver.execute(command.getCommandChain());
+        } catch (RuntimeException e) {
+            return resultFactory.forThrown(e);
+        }
+
+        if (result instanceof StreamResult && !((StreamResult) result).isLast()) {
+            return streams.next(((StreamResult) result).getStreamId(), command.getChunkSize());
+        } else {
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.server;
+
+import io.remotecontrol.result.Result;
+import io.remotecontrol.result.ResultFactory;
+import io.remotecontrol.result.impl.DefaultStreamResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * A result factory that opens a stream for each value, instead of serialising it.
+ *
+ * The result for a value is an empty, open, {@link io.remotecontrol.result.StreamResult}. Everything else is delegated.
+ */
+public class StreamingResultFactory implements ResultFactory {
+
+    private final ResultFactory delegate;
+    private final ResultStreams streams;
+
+    public StreamingResultFactory(ResultFactory delegate, ResultStreams streams) {
+        this.delegate = delegate;
+        this.streams = streams;
+    }
+
+    @Override
+    public Result forValue(Object value) {
+        return new DefaultStreamResult(streams.open(value), delegate.forValue(new ArrayList<Object>()), false);
+    }
+
+    @Override
+    public Result forThrown(Throwable throwable) {
+        return delegate.forThrown(throwable);
+    }
+
+    @Override
+    public Result deserialize(InputStream inputStream, ClassLoader classLoader) throws IOException {
+        return delegate.deserialize(inputStream, classLoader);
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.remotecontrol.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public abstract class DigestUtil {
+
+    private static final String ALGORITHM = "SHA-1";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private DigestUtil() {
+
+    }
+
+    /**
+     * Returns the hex encoded digest of the given bytes.
+     */
+    public static String digest(byte[] bytes) {
+        MessageDigest messageDigest = createMessageDigest();
+        messageDigest.update(bytes);
+        return toHex(messageDigest.digest());
+    }
+
+    /**
+     * Returns the hex encoded digest of the given byte arrays, taken as an ordered sequence.
+     *
+     * The length of each part is included so that different splits of the same bytes produce different digests.
+     */
+    public static String digest(Iterable<byte[]> parts) {
+        MessageDigest messageDigest = createMessageDigest();
+        for (byte[] part : parts) {
+            int length = part.length;
+            messageDigest.update(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+            messageDigest.update(part);
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    private static MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; ++i) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+}
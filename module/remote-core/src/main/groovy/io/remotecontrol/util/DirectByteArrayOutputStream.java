@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A byte array output stream whose contents can be read back without being copied.
+ */
+public class DirectByteArrayOutputStream extends ByteArrayOutputStream {
+
+    public DirectByteArrayOutputStream() {
+        super();
+    }
+
+    public DirectByteArrayOutputStream(int size) {
+        super(size);
+    }
+
+    /**
+     * Returns a stream over the bytes written so far, backed by this stream's buffer.
+     *
+     * Bytes written after this call are not visible to the returned stream, and the buffer must not be reset while it is in use.
+     */
+    public synchronized InputStream toInputStream() {
+        return new ByteArrayInputStream(buf, 0, count);
+    }
+
+    /**
+     * Returns a buffer over the bytes written so far, backed by this stream's buffer, with the same caveats as {@link #toInputStream()}.
+     */
+    public synchronized ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count);
+    }
+
+}
@@ -17,17 +17,24 @@
 package io.remotecontrol.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.NoSuchElementException;
 
+/**
+ * A class loader that hides the classes and packages of its parent whose names start with any of the blocked prefixes.
+ *
+ * Blocked classes are rejected without asking the parent for them. The prefixes are kept sorted, without those that are
+ * covered by a shorter prefix, so that checking a name is a binary search for the one prefix it could start with.
+ */
 public class FilteringClassLoader extends ClassLoader {
 
     private final String[] blockedPackages;
 
     public FilteringClassLoader(ClassLoader parent, String... blockedPackages) {
         super(parent);
-        this.blockedPackages = blockedPackages;
+        this.blockedPackages = compile(blockedPackages);
     }
 
     @Override
@@ -37,20 +44,11 @@ public class FilteringClassLoader extends ClassLoader {
 
     @Override
     protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
-        Class<?> cl;
-        try {
-            cl = super.loadClass(name, false);
-        } catch (NoClassDefFoundError e) {
-            if (classAllowed(name)) {
-                throw e;
-            }
-            // The class isn't visible
-            throw new ClassNotFoundException(String.format("%s not found.", name));
+        if (isBlocked(name)) {
+            throw new FilteredClassNotFoundException(name);
         }
 
-        if (!allowed(cl)) {
-            throw new ClassNotFoundException(String.format("%s not found.", cl.getName()));
-        }
+        Class<?> cl = super.loadClass(name, false);
         if (resolve) {
             resolveClass(cl);
         }
@@ -61,7 +59,7 @@ public class FilteringClassLoader extends ClassLoader {
     @Override
     protected Package getPackage(String name) {
         Package p = super.getPackage(name);
-        if (p == null || !allowed(p)) {
+        if (p == null || isBlocked(p.getName())) {
             return null;
         }
         return p;
@@ -71,34 +69,50 @@ public class FilteringClassLoader extends ClassLoader {
     protected Package[] getPackages() {
         List<Package> packages = new ArrayList<Package>();
         for (Package p : super.getPackages()) {
-            if (allowed(p)) {
+            if (!isBlocked(p.getName())) {
                 packages.add(p);
             }
         }
         return packages.toArray(new Package[packages.size()]);
     }
 
+    private boolean isBlocked(String name) {
+        int index = Arrays.binarySearch(blockedPackages, name);
+        if (index >= 0) {
+            return true;
+        }
+
+        // Any prefix of the name sorts before it, and with covered prefixes removed only the closest one can match
+        int candidate = -index - 2;
+        return candidate >= 0 && name.startsWith(blockedPackages[candidate]);
+    }
 
-    private boolean allowed(Package pkg) {
-        for (String packagePrefix : blockedPackages) {
-            if (pkg.getName().startsWith(packagePrefix)) {
-                return false;
+    private static String[] compile(String[] prefixes) {
+        String[] sorted = prefixes.clone();
+        Arrays.sort(sorted);
+        List<String> compiled = new ArrayList<String>(sorted.length);
+        for (String prefix : sorted) {
+            if (compiled.isEmpty() || !prefix.startsWith(compiled.get(compiled.size() - 1))) {
+                compiled.add(prefix);
             }
         }
-        return true;
+        return compiled.toArray(new String[compiled.size()]);
     }
 
-    private boolean allowed(Class<?> clazz) {
-        return classAllowed(clazz.getName());
-    }
+    /**
+     * Thrown for blocked classes, without a stack trace, as rejecting them is routine and the trace would only point here.
+     */
+    private static class FilteredClassNotFoundException extends ClassNotFoundException {
+        static public final long serialVersionUID = 1L;
 
-    private boolean classAllowed(String className) {
-        for (String packagePrefix : blockedPackages) {
-            if (className.startsWith(packagePrefix)) {
-                return false;
-            }
+        FilteredClassNotFoundException(String name) {
+            super(String.format("%s not found.", name));
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
         }
-        return true;
     }
 
     private static class EmptyEnumeration<T> implements Enumeration<T> {
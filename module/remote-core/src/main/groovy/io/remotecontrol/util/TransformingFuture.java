@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A future that transforms the value of another future, in the thread that retrieves it.
+ *
+ * The transformation is applied at most once. If it throws, the exception is thrown (wrapped in an ExecutionException) by every get.
+ */
+public abstract class TransformingFuture<S, T> implements Future<T> {
+
+    private final Future<S> source;
+    private boolean transformed;
+    private T value;
+    private Throwable failure;
+
+    public TransformingFuture(Future<S> source) {
+        this.source = source;
+    }
+
+    /**
+     * Transforms the value of the source future.
+     */
+    protected abstract T transform(S value) throws Exception;
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return source.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return source.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+        return source.isDone();
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        return transformOnce(source.get());
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return transformOnce(source.get(timeout, unit));
+    }
+
+    private synchronized T transformOnce(S sourceValue) throws ExecutionException {
+        if (!transformed) {
+            try {
+                value = transform(sourceValue);
+            } catch (Exception e) {
+                failure = e;
+            }
+            transformed = true;
+        }
+
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+
+        return value;
+    }
+
+}
@@ -15,6 +15,8 @@
  */
 package io.remotecontrol.client
 
+import io.remotecontrol.groovy.ClosureBundle
+import io.remotecontrol.groovy.client.ClosureBundleBuilder
 import io.remotecontrol.groovy.client.ClosureCommandGenerator
 import io.remotecontrol.groovy.client.RawClosureCommand
 import spock.lang.Specification
@@ -33,4 +35,129 @@ class CommandGeneratorSpec extends Specification {
 		{ -> def c = { -> def a = { -> def b = { -> } } }; def d = { -> } }  | 4
 	}
 
-}
\ No newline at end of file
+	def "class bytes are only read once per closure class"() {
+		given:
+		def reads = []
+		def generator = new ClosureCommandGenerator(this.getClass().classLoader) {
+			@Override
+			protected byte[] getClassBytes(Class closureClass) {
+				reads << closureClass
+				super.getClassBytes(closureClass)
+			}
+		}
+		def command = { -> def c = { -> "123" } }
+
+		when:
+		def first = generator.generate(new RawClosureCommand(command, Collections.emptyList()))
+		def second = generator.generate(new RawClosureCommand(command, Collections.emptyList()))
+
+		then:
+		reads == [command.getClass()]
+		first.root == second.root
+		first.supports == second.supports
+	}
+
+	def "closures in a bundle are generated from its definitions"() {
+		given:
+		def command = { -> def c = { -> "123" } }
+		def bytes = new ByteArrayOutputStream()
+		new ClosureBundleBuilder(this.getClass().classLoader).add(command.getClass()).build().write(bytes)
+		def bundle = ClosureBundle.read(new ByteArrayInputStream(bytes.toByteArray()))
+
+		and:
+		def reads = []
+		def generator = new ClosureCommandGenerator(this.getClass().classLoader, bundle) {
+			@Override
+			protected byte[] getClassBytes(Class closureClass) {
+				reads << closureClass
+				super.getClassBytes(closureClass)
+			}
+		}
+
+		when:
+		def bundled = generator.generate(new RawClosureCommand(command, Collections.emptyList()))
+		def read = this.generator.generate(new RawClosureCommand(command, Collections.emptyList()))
+
+		then:
+		reads.empty
+		bundled.root == read.root
+		bundled.supports == read.supports
+		bundled.classDigests == read.classDigests
+	}
+
+	def "stale bundle entries are checked against the class files and not used"() {
+		given:
+		def command = { -> def c = { -> "123" } }
+		def other = { -> def c = { -> "456" } }
+		def builder = new ClosureBundleBuilder(this.getClass().classLoader).add(command.getClass()).add(other.getClass())
+		def current = builder.build().getEntry(command.getClass().name)
+		def outdated = builder.build().getEntry(other.getClass().name)
+
+		and:
+		def staleRoot = new ClosureBundle.Entry(current.className, outdated.root, [(current.supportClassNames[0]): current.supports[0]])
+		def staleSupport = new ClosureBundle.Entry(current.className, current.root, [(current.supportClassNames[0]): outdated.supports[0]])
+
+		expect:
+		[staleRoot, staleSupport].each { entry ->
+			def definitions = [(entry.rootDigest): entry.root, (entry.supportDigests[0]): entry.supports[0]]
+			def generator = new ClosureCommandGenerator(this.getClass().classLoader, new ClosureBundle(definitions, [(entry.className): entry]))
+			def generated = generator.generate(new RawClosureCommand(command, Collections.emptyList()))
+			assert generated.root == current.root
+			assert generated.supports == current.supports
+		}
+	}
+
+	def "bundles record the modification times of class files"() {
+		given:
+		def command = { -> def c = { -> "123" } }
+		def bytes = new ByteArrayOutputStream()
+		new ClosureBundleBuilder(this.getClass().classLoader).add(command.getClass()).build().write(bytes)
+		def bundle = ClosureBundle.read(new ByteArrayInputStream(bytes.toByteArray()))
+		def entry = bundle.getEntry(command.getClass().name)
+		def classFile = { String className -> new File(this.getClass().classLoader.getResource(className.replace(".", "/") + ".class").toURI()) }
+
+		expect:
+		bundle.getLastModified(entry.rootDigest) == classFile(entry.className).lastModified()
+		bundle.getLastModified(entry.supportDigests[0]) == classFile(entry.supportClassNames[0]).lastModified()
+	}
+
+	def "bundle entries with other modification times are checked by digest"() {
+		given:
+		def command = { -> def c = { -> "123" } }
+		def entry = new ClosureBundleBuilder(this.getClass().classLoader).add(command.getClass()).build().getEntry(command.getClass().name)
+		def definitions = [(entry.rootDigest): entry.root, (entry.supportDigests[0]): entry.supports[0]]
+		def lastModified = [(entry.rootDigest): 1L, (entry.supportDigests[0]): 1L]
+
+		and:
+		def reads = []
+		def generator = new ClosureCommandGenerator(this.getClass().classLoader, new ClosureBundle(definitions, [(entry.className): entry], lastModified)) {
+			@Override
+			protected byte[] getClassBytes(Class closureClass) {
+				reads << closureClass
+				super.getClassBytes(closureClass)
+			}
+		}
+
+		when:
+		def generated = generator.generate(new RawClosureCommand(command, Collections.emptyList()))
+
+		then:
+		reads.empty
+		generated.root == entry.root
+		generated.supports == entry.supports
+	}
+
+	def "only top level closures are bundled from class path roots"() {
+		given:
+		def command = { -> def c = { -> "123" } }
+		def root = new File(this.getClass().protectionDomain.codeSource.location.toURI())
+
+		when:
+		def bundle = new ClosureBundleBuilder(this.getClass().classLoader).addClosuresIn(root).build()
+
+		then:
+		bundle.getEntry(command.getClass().name) != null
+		bundle.getEntry(bundle.getEntry(command.getClass().name).supportClassNames[0]) == null
+	}
+
+}
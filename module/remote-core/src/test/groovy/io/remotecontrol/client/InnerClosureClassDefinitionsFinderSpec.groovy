@@ -18,6 +18,9 @@ package io.remotecontrol.client
 import io.remotecontrol.groovy.client.InnerClosureClassDefinitionsFinder
 import spock.lang.Specification
 
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
 class InnerClosureClassDefinitionsFinderSpec extends Specification {
 
     protected createFinder(String[] urls) {
@@ -46,4 +49,26 @@ class InnerClosureClassDefinitionsFinderSpec extends Specification {
         notThrown Exception
     }
 
+    def "inner closures are found in jars"() {
+        given:
+        def closure = { -> def a = { -> def b = { -> 1 } } }
+        def packageDirPath = closure.getClass().package.name.replace(".", "/")
+        def classesDir = new File(getClass().getResource("${getClass().simpleName}.class").toURI()).parentFile
+        def jar = File.createTempFile("closures", ".jar")
+        jar.deleteOnExit()
+        jar.withOutputStream { out ->
+            def zip = new ZipOutputStream(out)
+            classesDir.listFiles().findAll { it.name.startsWith("InnerClosureClassDefinitionsFinderSpec\$") }.each { file ->
+                zip.putNextEntry(new ZipEntry("$packageDirPath/$file.name"))
+                zip.write(file.bytes)
+                zip.closeEntry()
+            }
+            zip.close()
+        }
+        def finder = new InnerClosureClassDefinitionsFinder(new URLClassLoader([jar.toURI().toURL()] as URL[], (ClassLoader) null))
+
+        expect:
+        finder.find(closure.getClass()).size() == 2
+    }
+
 }
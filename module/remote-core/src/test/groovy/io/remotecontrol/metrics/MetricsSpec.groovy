@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010 Luke Daley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.metrics
+
+import io.remotecontrol.groovy.client.RemoteControl
+import io.remotecontrol.groovy.server.ClosureReceiver
+import io.remotecontrol.transport.local.LocalTransport
+import spock.lang.Specification
+
+class MetricsSpec extends Specification {
+
+    def listener = new HistogramMetricsListener()
+
+    def setup() {
+        Metrics.listener = listener
+    }
+
+    def cleanup() {
+        Metrics.listener = null
+    }
+
+    def "phases of executing commands are recorded"() {
+        given:
+        def remote = new RemoteControl(new LocalTransport(new ClosureReceiver(getClass().classLoader), getClass().classLoader))
+
+        when:
+        remote.exec { [1, 2, 3] } { it.sum() }
+
+        then:
+        [Phase.GENERATE, Phase.SERIALIZE, Phase.DESERIALIZE, Phase.DEFINE_CLASSES, Phase.ENCODE_RESULT].every {
+            listener.getTimes(it).count > 0 && listener.getBytes(it) > 0
+        }
+        listener.getTimes(Phase.DECODE_RESULT).count == 1
+        listener.getTimes(Phase.INSTANTIATE).count == 2
+        listener.getTimes(Phase.EXECUTE).count == 2
+        listener.toString().contains("EXECUTE")
+    }
+
+    def "metrics are not recorded once the listener is reset"() {
+        when:
+        Metrics.listener = null
+        new RemoteControl(new LocalTransport(new ClosureReceiver(getClass().classLoader), getClass().classLoader)).exec { 1 }
+
+        then:
+        Metrics.listener instanceof NoOpMetricsListener
+        listener.getTimes(Phase.EXECUTE).count == 0
+    }
+
+    def "histogram percentiles are within a factor of two"() {
+        given:
+        def histogram = new Histogram()
+
+        when:
+        (1..1000).each { histogram.record(it) }
+
+        then:
+        histogram.count == 1000
+        histogram.max == 1000
+        histogram.mean == 500.5
+        histogram.getPercentile(0.5) >= 500 && histogram.getPercentile(0.5) < 1000
+        histogram.getPercentile(0.99) >= 990 && histogram.getPercentile(0.99) <= 1000
+        histogram.getPercentile(0) >= 1
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2010 Luke Daley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.server
+
+import io.remotecontrol.CommandChain
+import io.remotecontrol.CommandRejectedException
+import io.remotecontrol.SerializationUtil
+import io.remotecontrol.groovy.ClosureCommand
+import io.remotecontrol.groovy.client.ClosureCommandGenerator
+import io.remotecontrol.groovy.client.RawClosureCommand
+import io.remotecontrol.result.SerializedResult
+import io.remotecontrol.result.impl.DefaultResultFactory
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicInteger
+
+class CommandClassLoaderCacheSpec extends Specification {
+
+    def generator = new ClosureCommandGenerator(getClass().classLoader)
+
+    def command(Closure closure) {
+        generator.generate(new RawClosureCommand(closure, Collections.emptyList()))
+    }
+
+    def "identical commands share a loader"() {
+        given:
+        def cache = new CommandClassLoaderCache(getClass().classLoader)
+        def closure = { -> [1, 2].collect { it * 2 } }
+
+        when:
+        def first = cache.getLoader(command(closure))
+        def second = cache.getLoader(command(closure))
+
+        then:
+        first.is(second)
+        cache.size() == 1
+    }
+
+    def "commands of a chain share a loader that defines each class once"() {
+        given:
+        def cache = new CommandClassLoaderCache(getClass().classLoader)
+        def closure = { -> [1, 2].collect { it * 2 } }
+        def a = command(closure)
+        def b = command(closure)
+        def c = command { -> 3 }
+
+        when:
+        def loader = cache.getLoader([a, b, c])
+
+        then:
+        loader != null
+        loader.loadClass(closure.getClass().name).classLoader.is(loader)
+        cache.getLoader([a, b, c]).is(loader)
+        cache.size() == 1
+    }
+
+    def "classes are only defined when they are used"() {
+        given:
+        def cache = new CommandClassLoaderCache(getClass().classLoader)
+        def closure = { -> false ? [1].collect { it } : 1 }
+        def command = command(closure)
+
+        when:
+        def loader = cache.getLoader(command)
+
+        then:
+        loader.definedCount == 0
+        loader.undefinedCount == 2
+
+        when:
+        def result = new CommandInvoker(getClass().classLoader, command, cache).invokeAgainst(null, null)
+
+        then:
+        result == 1
+        loader.definedCount == 1
+        loader.undefinedCount == 1
+    }
+
+    def "invokers of a chain are created through the two argument hook"() {
+        given:
+        def cache = new CommandClassLoaderCache(getClass().classLoader)
+        def commands = [command { -> 1 }, command { it + 1 }]
+        def created = []
+        def invoker = new CommandChainInvoker(getClass().classLoader, CommandChain.of(ClosureCommand, commands), new DefaultResultFactory(), cache) {
+            @Override
+            protected CommandInvoker createInvoker(ClassLoader loader, ClosureCommand command) {
+                created << command
+                super.createInvoker(loader, command)
+            }
+        }
+
+        when:
+        def result = invoker.invokeAgainst(null, null)
+
+        then:
+        created == commands
+        result instanceof SerializedResult
+        cache.size() == 1
+    }
+
+    def "an invoker can be invoked more than once"() {
+        given:
+        def cache = new CommandClassLoaderCache(getClass().classLoader, 0)
+        def commands = [command { -> 1 }, command { it + 1 }]
+        def invoker = new CommandChainInvoker(getClass().classLoader, CommandChain.of(ClosureCommand, commands), new DefaultResultFactory(), cache)
+
+        when:
+        def results = (1..2).collect { invoker.invokeAgainst(null, null) }
+
+        then:
+        results.every { it instanceof SerializedResult && it.deserialize(getClass().classLoader) == 2 }
+        cache.tracker.trackedCount == 1
+    }
+
+    def "classes are defined in command loaders without reflection"() {
+        given:
+        def command = command { -> 1 }
+        def loader = new CommandClassLoader(getClass().classLoader, [:])
+
+        when:
+        def clazz = SerializationUtil.defineClass(loader, command.root)
+
+        then:
+        clazz.classLoader.is(loader)
+        clazz.name == CommandClassLoader.getClassName(command.root)
+        loader.loadClass(clazz.name).is(clazz)
+    }
+
+    def "live loaders and their estimated metaspace are tracked"() {
+        given:
+        def tracker = new CommandClassLoaderTracker()
+        def cache = new CommandClassLoaderCache(getClass().classLoader, 0, tracker)
+        def command = command { -> 1 }
+
+        when:
+        def first = cache.getLoader(command)
+        def second = cache.getLoader(command)
+        first.loadClass(CommandClassLoader.getClassName(command.root))
+
+        then:
+        tracker.liveCount == 2
+        tracker.trackedCount == 2
+        tracker.estimatedMetaspace == command.root.length * CommandClassLoaderTracker.METASPACE_PER_CLASS_BYTE
+    }
+
+    def "new loaders are rejected when the metaspace budget is exceeded"() {
+        given:
+        def cache = new CommandClassLoaderCache(getClass().classLoader, 1, new CommandClassLoaderTracker(1, 0))
+        def a = command { -> 1 }
+        def b = command { -> 2 }
+
+        when:
+        def loader = cache.getLoader(a)
+        loader.loadClass(CommandClassLoader.getClassName(a.root))
+
+        then:
+        cache.getLoader(a).is(loader)
+
+        when:
+        cache.getLoader(b)
+
+        then:
+        thrown(CommandRejectedException)
+    }
+
+    def "cached loaders are evicted when they exceed the metaspace budget"() {
+        given:
+        def a = command { -> 1 }
+        def b = command { -> 2 }
+        def tracker = new CommandClassLoaderTracker(a.root.length * CommandClassLoaderTracker.METASPACE_PER_CLASS_BYTE - 1, 5000)
+        def cache = new CommandClassLoaderCache(getClass().classLoader, 2, tracker)
+
+        when:
+        cache.getLoader(a).loadClass(CommandClassLoader.getClassName(a.root))
+
+        then:
+        tracker.overBudget
+        cache.size() == 1
+
+        when:
+        def loader = cache.getLoader(b)
+
+        then:
+        loader != null
+        cache.size() == 1
+        cache.getLoader(b).is(loader)
+        tracker.liveCount == 1
+    }
+
+    def "one garbage collection is requested per wait time however many chains are waiting"() {
+        given:
+        def requests = new AtomicInteger()
+        def tracker = new CommandClassLoaderTracker(1, 200, requestGc) {
+            @Override
+            protected void collectGarbage() {
+                requests.incrementAndGet()
+            }
+        }
+        def cache = new CommandClassLoaderCache(getClass().classLoader, 1, tracker)
+        def a = command { -> 1 }
+        def loader = cache.getLoader(a)
+        loader.loadClass(CommandClassLoader.getClassName(a.root))
+
+        when:
+        def rejected = new AtomicInteger()
+        def threads = (1..5).collect {
+            Thread.start {
+                try {
+                    tracker.checkBudget()
+                } catch (CommandRejectedException e) {
+                    rejected.incrementAndGet()
+                }
+            }
+        }
+        threads*.join()
+
+        then:
+        rejected.get() == 5
+        requests.get() == expectedRequests
+        loader != null
+
+        where:
+        requestGc | expectedRequests
+        true      | 1
+        false     | 0
+    }
+
+    def "least recently used loaders are evicted"() {
+        given:
+        def cache = new CommandClassLoaderCache(getClass().classLoader, 1)
+        def a = command { -> 1 }
+        def b = command { -> 2 }
+
+        when:
+        def loader = cache.getLoader(a)
+        cache.getLoader(b)
+
+        then:
+        cache.size() == 1
+        !cache.getLoader(a).is(loader)
+    }
+
+    def "nothing is cached when max size is zero"() {
+        given:
+        def cache = new CommandClassLoaderCache(getClass().classLoader, 0)
+        def a = command { -> 1 }
+
+        expect:
+        !cache.getLoader(a).is(cache.getLoader(a))
+        cache.size() == 0
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010 Luke Daley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.server
+
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+
+class StorageContextFactorySpec extends Specification {
+
+    def "contexts read from the seed without changing it"() {
+        given:
+        def factory = StorageContextFactory.withSeed([a: 1, b: 2])
+        def first = factory.getContext(null)
+        def second = factory.getContext(null)
+
+        when:
+        first.a = 10
+        first.c = 3
+
+        then:
+        first.a == 10
+        first.b == 2
+        first.c == 3
+        second.a == 1
+
+        when:
+        second.c
+
+        then:
+        thrown(MissingPropertyException)
+    }
+
+    def "contexts fall back to and expose the shared storage"() {
+        given:
+        def shared = new SharedStorage()
+        def factory = StorageContextFactory.withSeed([a: 1], shared)
+        def first = factory.getContext(null)
+        def second = factory.getContext(null)
+
+        when:
+        first.shared.b = 2
+        first.a = 10
+
+        then:
+        second.b == 2
+        second.a == 1
+        second.shared.is(shared)
+    }
+
+    def "shared values are created once"() {
+        given:
+        def shared = new SharedStorage()
+        def creations = 0
+
+        when:
+        def values = (1..2).collect { shared.getOrCreate("value") { ++creations; null } }
+
+        then:
+        values == [null, null]
+        creations == 1
+        shared.contains("value")
+    }
+
+    def "creating a shared value does not hold up other names"() {
+        given:
+        def shared = new SharedStorage()
+        def started = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def slow = Thread.start { shared.getOrCreate("slow") { started.countDown(); release.await(); "slow" } }
+
+        when:
+        started.await()
+        def other = shared.getOrCreate("other") { "other" }
+
+        then:
+        other == "other"
+        !shared.contains("slow")
+
+        when:
+        release.countDown()
+        slow.join()
+
+        then:
+        shared.get("slow") == "slow"
+    }
+
+    def "subclasses can be created without shared storage"() {
+        given:
+        def factory = new StorageContextFactory() {
+            Storage getContext(io.remotecontrol.CommandChain chain) {
+                new Storage(null, [:], shared)
+            }
+        }
+
+        expect:
+        factory.shared == null
+    }
+
+    def "shared property is an ordinary value without shared storage"() {
+        given:
+        def context = StorageContextFactory.withEmptyStorage().getContext(null)
+
+        when:
+        context.shared = 1
+
+        then:
+        context.shared == 1
+    }
+
+}
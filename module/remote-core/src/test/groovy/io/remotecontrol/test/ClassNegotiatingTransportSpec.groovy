@@ -0,0 +1,217 @@
+/*
+ * Copyright 2010 Luke Daley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.test
+
+import io.remotecontrol.RemoteControlException
+import io.remotecontrol.client.Transport
+import io.remotecontrol.groovy.ClassDefinitionsQuery
+import io.remotecontrol.groovy.ClosureCommand
+import io.remotecontrol.groovy.client.ClosureBundleBuilder
+import io.remotecontrol.groovy.client.ClosureCommandGenerator
+import io.remotecontrol.groovy.client.ClassNegotiatingTransport
+import io.remotecontrol.groovy.client.RawClosureCommand
+import io.remotecontrol.groovy.client.RemoteControl
+import io.remotecontrol.groovy.server.ClassDefinitionStore
+import io.remotecontrol.groovy.server.ClosureCommandRunner
+import io.remotecontrol.groovy.server.ClosureReceiver
+import io.remotecontrol.result.impl.DefaultResultFactory
+import io.remotecontrol.server.MultiTypeReceiver
+import io.remotecontrol.server.Receiver
+import io.remotecontrol.server.StorageContextFactory
+import io.remotecontrol.transport.local.LocalTransport
+import io.remotecontrol.util.FilteringClassLoader
+import spock.lang.Specification
+
+class ClassNegotiatingTransportSpec extends Specification {
+
+    def clientClassLoader = getClass().classLoader
+    def serverClassLoader = new FilteringClassLoader(clientClassLoader, "io.remotecontrol.test")
+    def sent = []
+
+    RemoteControl remote(Receiver receiver) {
+        def local = new LocalTransport(receiver, clientClassLoader)
+        def recording = { chain -> sent << chain; local.send(chain) } as Transport
+        new RemoteControl(new ClassNegotiatingTransport(recording), clientClassLoader)
+    }
+
+    def "class definitions are only sent until the receiver has them"() {
+        given:
+        def remote = remote(new ClosureReceiver(serverClassLoader))
+        def command = { [1, 2].collect { it * 2 } }
+
+        when:
+        def first = remote.exec(command)
+        def second = remote.exec(command)
+
+        then:
+        first == [2, 4]
+        second == [2, 4]
+        sent*.type == [ClassDefinitionsQuery, ClosureCommand, ClosureCommand]
+        sent[1].commands[0].hasClassDefinitions()
+        !sent[2].commands[0].hasClassDefinitions()
+    }
+
+    def "class definitions are not sent for closures preloaded from a bundle"() {
+        given:
+        def receiver = new ClosureReceiver(serverClassLoader)
+        def remote = remote(receiver)
+        def command = { [1, 2].collect { it * 3 } }
+        receiver.preload(new ClosureBundleBuilder(clientClassLoader).add(command.getClass()).build())
+
+        when:
+        def result = remote.exec(command)
+
+        then:
+        result == [3, 6]
+        sent*.type == [ClassDefinitionsQuery, ClosureCommand]
+        !sent[1].commands[0].hasClassDefinitions()
+    }
+
+    def "only as many bundle closures are preloaded as the loader cache retains"() {
+        given:
+        def receiver = new ClosureReceiver(serverClassLoader, StorageContextFactory.withEmptyStorage(), new DefaultResultFactory(), 1)
+        def commands = [{ 1 }, { 2 }, { 3 }]
+        def builder = new ClosureBundleBuilder(clientClassLoader)
+        commands.each { builder.add(it.getClass()) }
+
+        when:
+        receiver.preload(builder.build())
+
+        then:
+        receiver.classLoaderTracker.trackedCount == 1
+
+        and:
+        commands.collect { remote(receiver).exec(it) } == [1, 2, 3]
+    }
+
+    def "class definitions are only stored under their own digests"() {
+        given:
+        def store = new ClassDefinitionStore()
+        def command = new ClosureCommandGenerator(clientClassLoader).generate(new RawClosureCommand({ [1].collect { it } }, []))
+        def forged = new ClosureCommand(command.instance, command.root, command.supports, "0" * 40, command.supportDigests)
+
+        expect:
+        !store.store(forged)
+        store.size() == 0
+        store.store(command)
+        store.findMissing(command.classDigests).empty
+    }
+
+    def "chain is resent in full when the receiver has lost the definitions"() {
+        given:
+        def receiver = new ClosureReceiver(serverClassLoader)
+        def remote = remote({ input, output -> receiver.execute(input, output) } as Receiver)
+        def command = { 1 + 1 }
+
+        when:
+        remote.exec(command)
+        receiver = new ClosureReceiver(serverClassLoader)
+        def result = remote.exec(command)
+
+        then:
+        result == 2
+        sent*.type == [ClassDefinitionsQuery, ClosureCommand, ClosureCommand, ClosureCommand]
+        !sent[2].commands[0].hasClassDefinitions()
+        sent[3].commands[0].hasClassDefinitions()
+    }
+
+    def "falls back to sending full chains when receiver does not understand queries"() {
+        given:
+        def runner = new ClosureCommandRunner(serverClassLoader, StorageContextFactory.withEmptyStorage(), new DefaultResultFactory())
+        def remote = remote(new MultiTypeReceiver(serverClassLoader, runner))
+        def command = { 1 + 1 }
+
+        when:
+        remote.exec(command)
+        remote.exec(command)
+
+        then:
+        sent*.type == [ClassDefinitionsQuery, ClosureCommand, ClosureCommand]
+        sent[1..2].every { it.commands[0].hasClassDefinitions() }
+    }
+
+    def "a query that fails without an answer only sends that chain in full"() {
+        given:
+        def local = new LocalTransport(new ClosureReceiver(serverClassLoader), clientClassLoader)
+        def failures = 1
+        def transport = new ClassNegotiatingTransport({ chain ->
+            sent << chain
+            if (chain.type == ClassDefinitionsQuery && failures-- > 0) {
+                throw new RemoteControlException("Read timed out")
+            }
+            local.send(chain)
+        } as Transport)
+        def remote = new RemoteControl(transport, clientClassLoader)
+        def command = { 1 + 1 }
+
+        when:
+        remote.exec(command)
+        remote.exec(command)
+
+        then:
+        !transport.negotiationUnsupported
+        sent*.type == [ClassDefinitionsQuery, ClosureCommand, ClosureCommand]
+        sent[1].commands[0].hasClassDefinitions()
+        !sent[2].commands[0].hasClassDefinitions()
+    }
+
+    def "stops querying once queries have repeatedly failed without an answer"() {
+        given:
+        def local = new LocalTransport(new ClosureReceiver(serverClassLoader), clientClassLoader)
+        def transport = new ClassNegotiatingTransport({ chain ->
+            sent << chain
+            if (chain.type == ClassDefinitionsQuery) {
+                throw new RemoteControlException("Error sending command chain", new IOException("Unexpected end of file from server"))
+            }
+            local.send(chain)
+        } as Transport)
+        transport.maxQueryFailures = 2
+        def remote = new RemoteControl(transport, clientClassLoader)
+
+        when:
+        remote.exec { 1 + 1 }
+        remote.exec { 2 + 2 }
+        remote.exec { 3 + 3 }
+
+        then:
+        transport.negotiationUnsupported
+        sent*.type == [ClassDefinitionsQuery, ClosureCommand, ClassDefinitionsQuery, ClosureCommand, ClosureCommand]
+    }
+
+    def "an answered query resets the count of failed queries"() {
+        given:
+        def local = new LocalTransport(new ClosureReceiver(serverClassLoader), clientClassLoader)
+        def failing = [true, false, true]
+        def transport = new ClassNegotiatingTransport({ chain ->
+            sent << chain
+            if (chain.type == ClassDefinitionsQuery && failing.remove(0)) {
+                throw new RemoteControlException("Read timed out")
+            }
+            local.send(chain)
+        } as Transport)
+        transport.maxQueryFailures = 2
+        def remote = new RemoteControl(transport, clientClassLoader)
+
+        when:
+        remote.exec { 1 + 1 }
+        remote.exec { 2 + 2 }
+        remote.exec { 3 + 3 }
+
+        then:
+        !transport.negotiationUnsupported
+    }
+
+}
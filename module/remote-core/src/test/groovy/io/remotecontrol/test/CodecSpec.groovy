@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010 Luke Daley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.test
+
+import io.remotecontrol.CommandChain
+import io.remotecontrol.client.RemoteException
+import io.remotecontrol.client.Transport
+import io.remotecontrol.client.UnserializableReturnException
+import io.remotecontrol.codec.Codec
+import io.remotecontrol.codec.Codecs
+import io.remotecontrol.groovy.ClosureCommand
+import io.remotecontrol.groovy.client.ClosureCommandGenerator
+import io.remotecontrol.groovy.client.RawClosureCommand
+import io.remotecontrol.groovy.client.RemoteControl
+import io.remotecontrol.groovy.server.ClosureReceiver
+import io.remotecontrol.result.Result
+import io.remotecontrol.result.impl.DefaultResultFactory
+import io.remotecontrol.result.impl.DefaultSerializedResult
+import io.remotecontrol.result.impl.DefaultThrownResult
+import io.remotecontrol.result.impl.DefaultUnserializableThrownResult
+import io.remotecontrol.util.FilteringClassLoader
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class CodecSpec extends Specification {
+
+    def clientClassLoader = getClass().classLoader
+    def receiver = new ClosureReceiver(new FilteringClassLoader(clientClassLoader, "io.remotecontrol.test"))
+    def sizes = []
+
+    RemoteControl remote(Codec codec) {
+        new RemoteControl(new Transport() {
+            Result send(CommandChain commandChain) {
+                def commandBytes = new ByteArrayOutputStream()
+                commandChain.writeTo(commandBytes, codec)
+                def resultBytes = new ByteArrayOutputStream()
+                receiver.execute(new ByteArrayInputStream(commandBytes.toByteArray()), resultBytes)
+                sizes << commandBytes.size() + resultBytes.size()
+                new DefaultResultFactory().deserialize(new ByteArrayInputStream(resultBytes.toByteArray()), clientClassLoader)
+            }
+        }, clientClassLoader)
+    }
+
+    @Unroll
+    def "command chains and results round trip with the #codec.name codec"() {
+        given:
+        def remote = remote(codec)
+
+        expect:
+        remote.exec { 1 } { it + 1 } == 2
+        remote.exec { null } == null
+        remote.execBatch([{ 1 }, [{ 2 }, { it * 2 }]]) == [1, 4]
+        remote.stream(chunkSize: 2) { [1, 2, 3] }.collect() == [1, 2, 3]
+        remote.exec(discardResult: true) { 1 } == null
+
+        when:
+        remote.exec { throw new IllegalStateException("bang") }
+
+        then:
+        def e = thrown(RemoteException)
+        e.cause instanceof IllegalStateException
+
+        when:
+        remote.exec { new Object() }
+
+        then:
+        thrown(UnserializableReturnException)
+
+        where:
+        codec << [Codecs.JAVA, Codecs.BINARY]
+    }
+
+    def "binary envelope is smaller than java serialised envelope"() {
+        when:
+        remote(Codecs.JAVA).exec { 1 }
+        remote(Codecs.BINARY).exec { 1 }
+
+        then:
+        sizes[1] < sizes[0]
+    }
+
+    def "binary codec writes the class definitions shared by the commands of a chain once"() {
+        given:
+        def command = new ClosureCommandGenerator(clientClassLoader).generate(new RawClosureCommand({ [1].collect { it } }, []))
+        def once = new ByteArrayOutputStream()
+        def thrice = new ByteArrayOutputStream()
+
+        when:
+        CommandChain.of(ClosureCommand, command).writeTo(once, Codecs.BINARY)
+        CommandChain.of(ClosureCommand, command, command, command).writeTo(thrice, Codecs.BINARY)
+        def read = Codecs.BINARY.readCommandChain(new ByteArrayInputStream(thrice.toByteArray()), clientClassLoader)
+
+        then:
+        thrice.size() - once.size() < command.root.length
+        read.commands.size() == 3
+        read.commands.every { it.root == command.root && it.supports == command.supports && it.classDigests == command.classDigests }
+    }
+
+    @Unroll
+    def "results that occupy part of their buffer round trip with the #codec.name codec"() {
+        given:
+        def buffer = new ByteArrayOutputStream()
+        new ObjectOutputStream(buffer).withStream { it.writeObject("value") }
+        def bytes = buffer.toByteArray()
+        def padded = new byte[bytes.length + 16]
+        System.arraycopy(bytes, 0, padded, 0, bytes.length)
+        def written = new ByteArrayOutputStream()
+
+        when:
+        codec.writeResult(new DefaultSerializedResult(padded, bytes.length), written)
+        def read = codec.readResult(new ByteArrayInputStream(written.toByteArray()), clientClassLoader)
+
+        then:
+        read.length == bytes.length
+        read.bytes == bytes
+        read.deserialize(clientClassLoader) == "value"
+        codec != Codecs.JAVA || written.toByteArray() == javaWritten(new DefaultSerializedResult(bytes))
+
+        where:
+        codec << [Codecs.JAVA, Codecs.BINARY]
+    }
+
+    private javaWritten(result) {
+        def written = new ByteArrayOutputStream()
+        Codecs.JAVA.writeResult(result, written)
+        written.toByteArray()
+    }
+
+    @Unroll
+    def "#type.simpleName serialised by earlier versions can still be read"() {
+        when:
+        def read = new ObjectInputStream(new ByteArrayInputStream(serialised.decodeBase64())).withStream { it.readObject() }
+        def rewritten = new ByteArrayOutputStream()
+        new ObjectOutputStream(rewritten).withStream { it.writeObject(read) }
+
+        then:
+        type.isInstance(read)
+        payload(read) == "value"
+        rewritten.toByteArray() == serialised.decodeBase64()
+
+        where:
+        type                              | serialised
+        DefaultSerializedResult           | "rO0ABXNyADRpby5yZW1vdGVjb250cm9sLnJlc3VsdC5pbXBsLkRlZmF1bHRTZXJpYWxpemVkUmVzdWx0J5VfhY9uMOkCAAFbAAVieXRlc3QAAltCeHB1cgACW0Ks8xf4BghU4AIAAHhwAAAADKztAAV0AAV2YWx1ZQ=="
+        DefaultThrownResult               | "rO0ABXNyADBpby5yZW1vdGVjb250cm9sLnJlc3VsdC5pbXBsLkRlZmF1bHRUaHJvd25SZXN1bHSlZboCxe09iQIAAHhyADRpby5yZW1vdGVjb250cm9sLnJlc3VsdC5pbXBsLkRlZmF1bHRTZXJpYWxpemVkUmVzdWx0J5VfhY9uMOkCAAFbAAVieXRlc3QAAltCeHB1cgACW0Ks8xf4BghU4AIAAHhwAAAADKztAAV0AAV2YWx1ZQ=="
+        DefaultUnserializableThrownResult | "rO0ABXNyAD5pby5yZW1vdGVjb250cm9sLnJlc3VsdC5pbXBsLkRlZmF1bHRVbnNlcmlhbGl6YWJsZVRocm93blJlc3VsdPHOVqebMei4AgABWwAYbm90U2VyaWFsaXphYmxlRXhjZXB0aW9udAACW0J4cgA4aW8ucmVtb3RlY29udHJvbC5yZXN1bHQuaW1wbC5EZWZhdWx0VW5zZXJpYWxpemFibGVSZXN1bHQjMTSwNUuuywIAAUwAFHN0cmluZ1JlcHJlc2VudGF0aW9udAASTGphdmEvbGFuZy9TdHJpbmc7eHB0AAZ0aHJvd251cgACW0Ks8xf4BghU4AIAAHhwAAAADKztAAV0AAV2YWx1ZQ=="
+    }
+
+    private static payload(result) {
+        def bytes = result instanceof DefaultUnserializableThrownResult ? result.wrapperBytes : result.bytes
+        new ObjectInputStream(new ByteArrayInputStream(bytes)).withStream { it.readObject() }
+    }
+
+    def "codec is found from content type"() {
+        expect:
+        Codecs.forContentType("application/groovy-remote-control-command") == Codecs.JAVA
+        Codecs.forContentType("application/groovy-remote-control-command; codec=binary") == Codecs.BINARY
+        Codecs.forContentType(null) == Codecs.JAVA
+    }
+
+    def "registered codecs are found by name and signature"() {
+        given:
+        def codec = new PrefixedCodec()
+
+        when:
+        Codecs.register(codec)
+
+        then:
+        Codecs.forName("prefixed") == codec
+        Codecs.forContentType("application/groovy-remote-control-command; codec=prefixed") == codec
+        remote(codec).exec { 1 } { it + 1 } == 2
+
+        when:
+        Codecs.register(new PrefixedCodec())
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    static class PrefixedCodec implements Codec {
+
+        String getName() {
+            "prefixed"
+        }
+
+        boolean isSignature(byte[] signature) {
+            signature == [0x50, 0x43] as byte[]
+        }
+
+        void writeCommandChain(CommandChain<?> commandChain, OutputStream outputStream) {
+            outputStream.write([0x50, 0x43] as byte[])
+            Codecs.BINARY.writeCommandChain(commandChain, outputStream)
+        }
+
+        CommandChain<?> readCommandChain(InputStream inputStream, ClassLoader classLoader) {
+            inputStream.skip(2)
+            Codecs.BINARY.readCommandChain(inputStream, classLoader)
+        }
+
+        void writeResult(Result result, OutputStream outputStream) {
+            outputStream.write([0x50, 0x43] as byte[])
+            Codecs.BINARY.writeResult(result, outputStream)
+        }
+
+        Result readResult(InputStream inputStream, ClassLoader classLoader) {
+            inputStream.skip(2)
+            Codecs.BINARY.readResult(inputStream, classLoader)
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010 Luke Daley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.test
+
+import io.remotecontrol.CommandRejectedException
+import io.remotecontrol.CommandTimeoutException
+import io.remotecontrol.client.RemoteException
+import io.remotecontrol.groovy.client.RemoteControl
+import io.remotecontrol.groovy.server.ClosureReceiver
+import io.remotecontrol.result.impl.DefaultResultFactory
+import io.remotecontrol.server.ExecutingReceiver
+import io.remotecontrol.transport.local.LocalTransport
+import io.remotecontrol.util.FilteringClassLoader
+import spock.lang.Specification
+
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadPoolExecutor
+
+class ExecutingReceiverSpec extends Specification {
+
+    def clientClassLoader = getClass().classLoader
+    def serverClassLoader = new FilteringClassLoader(clientClassLoader, "io.remotecontrol.test")
+    ThreadPoolExecutor executor
+    ExecutingReceiver receiver
+
+    RemoteControl remote(int threads, int queueSize, long timeoutMillis) {
+        executor = ExecutingReceiver.createBoundedExecutor(threads, queueSize) as ThreadPoolExecutor
+        receiver = new ExecutingReceiver(new ClosureReceiver(serverClassLoader), executor, new DefaultResultFactory(), timeoutMillis)
+        new RemoteControl(new LocalTransport(receiver, clientClassLoader), clientClassLoader)
+    }
+
+    void waitForActiveCount(int count) {
+        def deadline = System.currentTimeMillis() + 5000
+        while (executor.activeCount != count) {
+            assert System.currentTimeMillis() < deadline
+            Thread.sleep(10)
+        }
+    }
+
+    def cleanup() {
+        receiver?.shutdown()
+    }
+
+    def "commands are executed by the executor"() {
+        given:
+        def remote = remote(1, 0, 0)
+
+        expect:
+        remote.exec { Thread.currentThread().name }.startsWith("remote-control-receiver-")
+    }
+
+    def "commands that take too long are cancelled"() {
+        given:
+        def remote = remote(1, 0, 100)
+
+        when:
+        remote.exec { Thread.sleep(10000) }
+
+        then:
+        def e = thrown(RemoteException)
+        e.cause instanceof CommandTimeoutException
+
+        when:
+        // the cancelled chain's thread takes a moment to become free
+        waitForActiveCount(0)
+
+        then:
+        remote.exec { 1 } == 1
+    }
+
+    def "commands are rejected when the receiver is busy"() {
+        given:
+        def remote = remote(1, 0, 0)
+        def client = Executors.newSingleThreadExecutor()
+        def blocked = client.submit {
+            remote.exec { Thread.sleep(1000) }
+        }
+        // wait until the receiver thread is busy
+        waitForActiveCount(1)
+
+        when:
+        remote.exec { 1 }
+
+        then:
+        def e = thrown(RemoteException)
+        e.cause instanceof CommandRejectedException
+
+        cleanup:
+        blocked.get()
+        client.shutdown()
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.test
+
+import io.remotecontrol.CommandChain
+import io.remotecontrol.client.RemoteException
+import io.remotecontrol.groovy.client.RemoteControl
+import io.remotecontrol.groovy.server.ClosureReceiver
+import io.remotecontrol.result.Result
+import io.remotecontrol.server.Receiver
+import io.remotecontrol.transport.local.LocalTransport
+import io.remotecontrol.util.FilteringClassLoader
+import spock.lang.Specification
+
+class LocalTransportSpec extends Specification {
+
+    def clientClassLoader = getClass().classLoader
+    def serverClassLoader = new FilteringClassLoader(clientClassLoader, "io.remotecontrol.test")
+    def paths = []
+
+    def receiver = new ClosureReceiver(serverClassLoader) {
+        @Override
+        Result execute(CommandChain<?> commandChain) {
+            paths << "direct"
+            super.execute(commandChain)
+        }
+
+        @Override
+        void execute(InputStream input, OutputStream output) {
+            paths << "serialised"
+            super.execute(input, output)
+        }
+    }
+
+    RemoteControl remote(Receiver receiver) {
+        new RemoteControl(new LocalTransport(receiver, clientClassLoader), clientClassLoader)
+    }
+
+    static Receiver plain(Receiver receiver) {
+        { InputStream input, OutputStream output -> receiver.execute(input, output) } as Receiver
+    }
+
+    def "command chains are handed to command chain receivers without being serialised"() {
+        when:
+        def result = remote(receiver).exec { [1, 2].collect { it * 2 } }
+
+        then:
+        result == [2, 4]
+        paths == ["direct"]
+    }
+
+    def "command chains are serialised for other receivers"() {
+        when:
+        def result = remote(plain(receiver)).exec { [1, 2].collect { it * 2 } }
+
+        then:
+        result == [2, 4]
+        paths == ["serialised"]
+    }
+
+    def "thrown exceptions are the cause of a remote exception"() {
+        when:
+        remote(wrap(receiver)).exec { throw new IllegalStateException("bang!") }
+
+        then:
+        def e = thrown(RemoteException)
+        e.cause instanceof IllegalStateException
+        e.cause.message == "bang!"
+        paths == [path]
+
+        where:
+        wrap          | path
+        { it }        | "direct"
+        { plain(it) } | "serialised"
+    }
+
+}
@@ -27,6 +27,8 @@ import io.remotecontrol.util.FilteringClassLoader
 import io.remotecontrol.UnserializableExceptionException
 import io.remotecontrol.UnserializableCommandException
 
+import java.util.concurrent.ExecutionException
+
 /**
  * This test case shows how to use the remotecontrol control and some of it's limitations
  * with regard to serialisation and scope.
@@ -322,6 +324,92 @@ class SmokeTests extends GroovyTestCase {
         remote.exec { new HashMap(*: [a: 1, b: 2]) }
     }
 
+    /**
+     * Commands can be sent without waiting for their result, which is returned by a future.
+     */
+    void testExecAsync() {
+        def future = remote.execAsync { def a = 1; a + 1 }
+        assert future.get() == 2
+    }
+
+    void testExecAsyncThrowingException() {
+        def future = remote.execAsync { throw new Exception("bang!") }
+        def thrown = null
+        try {
+            future.get()
+        } catch (ExecutionException e) {
+            thrown = e.cause
+            assert thrown instanceof RemoteException
+            assert thrown.cause.message == "bang!"
+        }
+
+        assert thrown
+    }
+
+    void testExecBatch() {
+        assert remote.execBatch([{ 1 }, [{ 2 }, { it * 2 }], { null }]) == [1, 4, null]
+    }
+
+    void testExecBatchInParallel() {
+        assert remote.execBatch(parallel: true, (1..10).collect { n -> { -> n * 2 } }) == (1..10).collect { it * 2 }
+    }
+
+    void testExecBatchThrowingException() {
+        def thrown = null
+        try {
+            remote.execBatch([{ 1 }, { throw new Exception("bang!") }, { throw new Exception("bang again!") }])
+        } catch (RemoteException e) {
+            thrown = e
+            assert e.cause.message == "bang!"
+        }
+
+        assert thrown
+    }
+
+    void testExecLazy() {
+        def result = remote.execLazy { 1 } { it + 1 }
+        assert !result.deserialized
+        assert !result.null
+        assert result.get(Integer) == 2
+        assert result.deserialized
+        assert remote.execLazy { null }.null
+
+        shouldFail(RemoteException) { remote.execLazy { throw new Exception("bang!") } }
+    }
+
+    void testDiscardResult() {
+        assert remote.exec(discardResult: true) { new Object() } == null
+        assert remote.execBatch(discardResult: true, [{ 1 }, { 2 }]) == [null, null]
+        shouldFail(RemoteException) { remote.exec(discardResult: true) { throw new Exception("bang!") } }
+    }
+
+    void testStream() {
+        assert remote.stream(chunkSize: 3) { (1..10).collect { it * 2 } }.collect() == (1..10).collect { it * 2 }
+        assert remote.stream { null }.collect() == []
+        assert remote.stream { [1, 2] as int[] }.collect() == [1, 2]
+    }
+
+    void testStreamOnlyIteratesRequestedChunks() {
+        def iterator = remote.stream(chunkSize: 2) { (1..Integer.MAX_VALUE).iterator() }
+        assert iterator.take(5).collect() == [1, 2, 3, 4, 5]
+        iterator.close()
+        assert !iterator.hasNext()
+    }
+
+    void testStreamThrowingException() {
+        shouldFail(RemoteException) { remote.stream { throw new Exception("bang!") } }
+
+        def iterator = remote.stream(chunkSize: 2) {
+            def i = 0
+            [hasNext: { true }, next: { if (++i == 4) { throw new Exception("bang!") }; i }] as Iterator
+        }
+        assert iterator.next() == 1
+        assert iterator.next() == 2
+        assert iterator.next() == 3
+        shouldFail(RemoteException) { iterator.next() }
+        assert !iterator.hasNext()
+    }
+
     void testExternalLibrariesExecutingCodeOnRemote() {
         assert new RemoteCallingClass(remote).multiplyBy2OnRemote(3) == 6
     }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010 Luke Daley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.util
+
+import spock.lang.Specification
+
+class FilteringClassLoaderSpec extends Specification {
+
+    def requested = []
+    def parent = new ClassLoader(getClass().classLoader) {
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            requested << name
+            super.loadClass(name, resolve)
+        }
+    }
+
+    def "classes under blocked prefixes are rejected without asking the parent"() {
+        given:
+        def loader = new FilteringClassLoader(parent, "io.remotecontrol.util", "java.util.concurrent", "io.remotecontrol.util.internal")
+
+        when:
+        loader.loadClass(name)
+
+        then:
+        thrown(ClassNotFoundException)
+        requested.empty
+
+        where:
+        name << [FilteringClassLoaderSpec.name, "java.util.concurrent.ConcurrentHashMap", "io.remotecontrol.util.internal.Thing"]
+    }
+
+    def "classes outside of blocked prefixes are loaded by the parent"() {
+        given:
+        def loader = new FilteringClassLoader(parent, "io.remotecontrol.util", "java.util.concurrent")
+
+        expect:
+        loader.loadClass(name).is(Class.forName(name))
+        requested == [name]
+
+        where:
+        name << ["java.util.ArrayList", "java.util.Map", "io.remotecontrol.CommandChain", "java.lang.String"]
+    }
+
+}
@@ -0,0 +1,137 @@
+package io.remotecontrol.transport.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The HTTP content encodings (compression) that command chains and results can be sent with.
+ *
+ * {@link #DEFLATE} compresses at the fastest level, trading size for speed. {@link #GZIP} uses the default level.
+ */
+public enum ContentEncoding {
+
+    GZIP("gzip") {
+        @Override
+        public OutputStream encode(OutputStream outputStream) throws IOException {
+            return new GZIPOutputStream(outputStream);
+        }
+
+        @Override
+        public InputStream decode(InputStream inputStream) throws IOException {
+            return new GZIPInputStream(inputStream);
+        }
+    },
+
+    DEFLATE("deflate") {
+        @Override
+        public OutputStream encode(OutputStream outputStream) {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            return new DeflaterOutputStream(outputStream, deflater) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decode(InputStream inputStream) {
+            return new InflaterInputStream(inputStream);
+        }
+    };
+
+    /**
+     * The value of the Accept-Encoding header sent by clients, in order of preference.
+     */
+    public static final String ACCEPT_ENCODING = "deflate, gzip";
+
+    /**
+     * The default size, in bytes, below which content is not compressed.
+     */
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    private final String value;
+
+    ContentEncoding(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Wraps the given stream so that what is written to it is compressed. The returned stream must be closed, which closes the given stream.
+     */
+    public abstract OutputStream encode(OutputStream outputStream) throws IOException;
+
+    /**
+     * Wraps the given stream so that what is read from it is decompressed.
+     */
+    public abstract InputStream decode(InputStream inputStream) throws IOException;
+
+    /**
+     * Returns the encoding with the given Content-Encoding value, or null if the value is null or "identity".
+     *
+     * @throws IllegalArgumentException if the encoding is not supported
+     */
+    public static ContentEncoding forValue(String value) {
+        if (value == null || value.trim().equalsIgnoreCase("identity")) {
+            return null;
+        }
+        for (ContentEncoding encoding : values()) {
+            if (encoding.value.equalsIgnoreCase(value.trim())) {
+                return encoding;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported content encoding: " + value);
+    }
+
+    /**
+     * Returns the first supported encoding that the given Accept-Encoding value does not exclude with a zero quality, or null if there is none.
+     */
+    public static ContentEncoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String name = parts[0].trim();
+            if (isZeroQuality(parts)) {
+                continue;
+            }
+            for (ContentEncoding encoding : values()) {
+                if (encoding.value.equalsIgnoreCase(name)) {
+                    return encoding;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isZeroQuality(String[] parts) {
+        for (int i = 1; i < parts.length; ++i) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2).trim()) == 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+}
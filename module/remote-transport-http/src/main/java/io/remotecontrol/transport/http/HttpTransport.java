@@ -2,11 +2,17 @@ package io.remotecontrol.transport.http;
 
 import io.remotecontrol.CommandChain;
 import io.remotecontrol.RemoteControlException;
-import io.remotecontrol.client.Transport;
+import io.remotecontrol.client.AsyncTransport;
+import io.remotecontrol.codec.Codec;
+import io.remotecontrol.codec.Codecs;
 import io.remotecontrol.groovy.ContentType;
+import io.remotecontrol.metrics.Metrics;
+import io.remotecontrol.metrics.MetricsListener;
+import io.remotecontrol.metrics.Phase;
 import io.remotecontrol.result.Result;
 import io.remotecontrol.result.ResultFactory;
 import io.remotecontrol.result.impl.DefaultResultFactory;
+import io.remotecontrol.util.DirectByteArrayOutputStream;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -14,16 +20,51 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Transports commands over http to the given receiver address.
+ *
+ * Connections are persistent (HTTP keep-alive), with the JDK's connection cache holding idle connections between requests.
+ * Responses are always read to the end so that their connection can be reused. The number of connections that may be open
+ * concurrently can be bounded with {@link #setMaxConnections(int)}; note that the JDK only keeps up to {@code http.maxConnections}
+ * (a system property, defaulting to 5) idle connections per destination.
+ *
+ * Command chains sent asynchronously are executed by a pool of up to {@link #DEFAULT_ASYNC_THREADS} daemon threads that is
+ * shared by all transports, unless an executor is provided with {@link #setAsyncExecutor(java.util.concurrent.Executor)}.
+ * Threads of the shared pool stop after being idle for {@link #DEFAULT_ASYNC_KEEP_ALIVE_SECONDS} seconds.
+ *
+ * Compressed results are accepted by default (see {@link ContentEncoding}). Command chains are only compressed if a request
+ * encoding is set, as receivers that predate compression cannot read them.
  */
-public class HttpTransport implements Transport {
+public class HttpTransport implements AsyncTransport {
+
+    public static final int DEFAULT_ASYNC_THREADS = 8;
+    public static final int DEFAULT_ASYNC_KEEP_ALIVE_SECONDS = 60;
 
     private final String receiverAddress;
     private final ClassLoader classLoader;
     private final ResultFactory resultFactory;
 
+    private volatile Codec codec = Codecs.getDefault();
+    private volatile ContentEncoding requestEncoding;
+    private volatile int compressionThreshold = ContentEncoding.DEFAULT_THRESHOLD;
+    private volatile boolean acceptEncoding = true;
+    private volatile int connectTimeout;
+    private volatile int readTimeout;
+    private volatile Semaphore connectionPermits;
+    private Executor asyncExecutor;
+
     /**
      * @param receiverAddress the full address to the remotecontrol receiver
      * @param classLoader the class loader to use when unserialising the result
@@ -55,26 +96,91 @@ public class HttpTransport implements Transport {
      * @throws RemoteControlException if there is any issue with the receiver.
      */
     public Result send(final CommandChain commandChain) throws RemoteControlException {
+        Semaphore permits = connectionPermits;
+        if (permits != null) {
+            permits.acquireUninterruptibly();
+        }
+
+        try {
+            return doSend(commandChain);
+        } finally {
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Serialises the Command and sends it over HTTP on the async executor, returning a future for the Result.
+     */
+    public Future<Result> sendAsync(final CommandChain<?> commandChain) {
+        FutureTask<Result> task = new FutureTask<Result>(new Callable<Result>() {
+            public Result call() {
+                return send(commandChain);
+            }
+        });
+        getAsyncExecutor().execute(task);
+        return task;
+    }
+
+    private Result doSend(CommandChain commandChain) {
         OutputStream outputStream = null;
         InputStream inputStream = null;
+        HttpURLConnection urlConnection = null;
+        MetricsListener metrics = Metrics.getListener();
+        long start = System.nanoTime();
 
         try {
-            HttpURLConnection urlConnection = openConnection();
-            urlConnection.setRequestProperty("Content-Type", ContentType.COMMAND.getValue());
-            urlConnection.setRequestProperty("Accept", ContentType.RESULT.getValue());
+            DirectByteArrayOutputStream commandBytes = new DirectByteArrayOutputStream();
+            Codec codec = this.codec;
+            commandChain.writeTo(commandBytes, codec);
+
+            ContentEncoding encoding = requestEncoding;
+            if (encoding != null && commandBytes.size() >= compressionThreshold) {
+                commandBytes = compress(commandBytes, encoding);
+            } else {
+                encoding = null;
+            }
+
+            urlConnection = openConnection();
+            urlConnection.setRequestProperty("Content-Type", ContentType.COMMAND.getValue(codec));
+            urlConnection.setRequestProperty("Accept", ContentType.RESULT.getValue(codec));
+            if (encoding != null) {
+                urlConnection.setRequestProperty("Content-Encoding", encoding.getValue());
+            }
+            if (acceptEncoding) {
+                urlConnection.setRequestProperty("Accept-Encoding", ContentEncoding.ACCEPT_ENCODING);
+            }
             urlConnection.setInstanceFollowRedirects(true);
             urlConnection.setDoOutput(true);
+            urlConnection.setConnectTimeout(connectTimeout);
+            urlConnection.setReadTimeout(readTimeout);
+            urlConnection.setFixedLengthStreamingMode(commandBytes.size());
 
             configureConnection(urlConnection);
 
             outputStream = urlConnection.getOutputStream();
-            commandChain.writeTo(outputStream);
+            commandBytes.writeTo(outputStream);
+            metrics.bytes(Phase.SEND, commandBytes.size());
 
             inputStream = urlConnection.getInputStream();
-            return resultFactory.deserialize(inputStream, classLoader);
+            InputStream resultStream = inputStream;
+            ContentEncoding resultEncoding = ContentEncoding.forValue(urlConnection.getContentEncoding());
+            if (resultEncoding != null) {
+                resultStream = resultEncoding.decode(inputStream);
+            }
+
+            Result result = resultFactory.deserialize(resultStream, classLoader);
+            drain(resultStream);
+            drain(inputStream);
+            return result;
         } catch (Exception e) {
+            if (urlConnection != null) {
+                discardErrorStream(urlConnection);
+            }
             throw new RemoteControlException("Error sending command chain to \'" + String.valueOf(receiverAddress) + "\'", e);
         } finally {
+            metrics.time(Phase.SEND, System.nanoTime() - start);
             for (Closeable closeable : new Closeable[]{inputStream, outputStream}) {
                 if (closeable != null) {
                     try {
@@ -87,6 +193,172 @@ public class HttpTransport implements Transport {
         }
     }
 
+    private static DirectByteArrayOutputStream compress(DirectByteArrayOutputStream bytes, ContentEncoding encoding) throws IOException {
+        DirectByteArrayOutputStream compressed = new DirectByteArrayOutputStream(bytes.size() / 2);
+        OutputStream encoder = encoding.encode(compressed);
+        try {
+            bytes.writeTo(encoder);
+        } finally {
+            encoder.close();
+        }
+        return compressed;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the codec that command chains are written with (the receiver writes the result with the same codec).
+     *
+     * Defaults to Java serialisation. Receivers that predate codecs only understand the default.
+     */
+    public void setCodec(Codec codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("codec must not be null");
+        }
+        this.codec = codec;
+    }
+
+    public ContentEncoding getRequestEncoding() {
+        return requestEncoding;
+    }
+
+    /**
+     * Sets the encoding that command chains are compressed with, or null (the default) to send them uncompressed.
+     *
+     * Receivers that predate compression cannot read compressed command chains.
+     */
+    public void setRequestEncoding(ContentEncoding requestEncoding) {
+        this.requestEncoding = requestEncoding;
+    }
+
+    /**
+     * The size, in bytes, below which command chains are sent uncompressed. Defaults to {@link ContentEncoding#DEFAULT_THRESHOLD}.
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        if (compressionThreshold < 0) {
+            throw new IllegalArgumentException("compressionThreshold must not be negative");
+        }
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public boolean isAcceptEncoding() {
+        return acceptEncoding;
+    }
+
+    /**
+     * Whether the receiver may compress results (true by default).
+     */
+    public void setAcceptEncoding(boolean acceptEncoding) {
+        this.acceptEncoding = acceptEncoding;
+    }
+
+    /**
+     * The connect timeout, in milliseconds, for connections to the receiver. Zero (the default) means no timeout.
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        if (connectTimeout < 0) {
+            throw new IllegalArgumentException("connectTimeout must not be negative");
+        }
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * The read timeout, in milliseconds, when waiting for the result. Zero (the default) means no timeout.
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        if (readTimeout < 0) {
+            throw new IllegalArgumentException("readTimeout must not be negative");
+        }
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Bounds the number of connections to the receiver that can be in use at once. Further sends wait for a connection to be released.
+     *
+     * Zero (the default) means no bound. Should not be changed while commands are being sent.
+     */
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 0) {
+            throw new IllegalArgumentException("maxConnections must not be negative");
+        }
+        this.connectionPermits = maxConnections == 0 ? null : new Semaphore(maxConnections, true);
+    }
+
+    /**
+     * Sets the executor that asynchronously sent command chains are executed by.
+     */
+    public synchronized void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    protected synchronized Executor getAsyncExecutor() {
+        return asyncExecutor == null ? DefaultAsyncExecutor.INSTANCE : asyncExecutor;
+    }
+
+    // Created on first use, so transports that are only used synchronously start no threads
+    private static class DefaultAsyncExecutor {
+
+        static final ExecutorService INSTANCE = create();
+
+        private static ExecutorService create() {
+            final AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_ASYNC_THREADS, DEFAULT_ASYNC_THREADS, DEFAULT_ASYNC_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "remote-control-http-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+
+    }
+
+    /**
+     * Reads whatever remains of the response, so the connection can be returned to the keep-alive cache.
+     */
+    private static void drain(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[512];
+        while (inputStream.read(buffer) != -1) {
+            // discard
+        }
+    }
+
+    /**
+     * Reads and closes the error stream after a failed request, as otherwise the connection cannot be reused.
+     */
+    private static void discardErrorStream(HttpURLConnection connection) {
+        InputStream errorStream = connection.getErrorStream();
+        if (errorStream != null) {
+            try {
+                drain(errorStream);
+            } catch (IOException ignore) {
+                // ignore
+            } finally {
+                try {
+                    errorStream.close();
+                } catch (IOException ignore) {
+                    // ignore
+                }
+            }
+        }
+    }
+
     /**
      * Subclass hook for configuring the connection object before the request is set.
      *
@@ -2,6 +2,7 @@ package io.remotecontrol.transport.http;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
+import io.remotecontrol.codec.Codecs;
 import io.remotecontrol.groovy.ContentType;
 import io.remotecontrol.server.Receiver;
 
@@ -11,10 +12,14 @@ import java.io.OutputStream;
 
 /**
  * A HttpHandler implementation for the com.sun.net.httpserver package.
+ *
+ * Compressed command chains are accepted, and results are compressed if the client accepts it and they are not smaller than
+ * the compression threshold (see {@link ContentEncoding}).
  */
 public class RemoteControlHttpHandler implements HttpHandler {
 
     private final Receiver receiver;
+    private volatile int compressionThreshold = ContentEncoding.DEFAULT_THRESHOLD;
 
     public RemoteControlHttpHandler(Receiver receiver) {
         this.receiver = receiver;
@@ -23,8 +28,30 @@ public class RemoteControlHttpHandler implements HttpHandler {
     public void handle(final HttpExchange exchange) {
         try {
             if (validateRequest(exchange)) {
-                configureSuccessfulResponse(exchange);
-                doExecute(exchange.getRequestBody(), exchange.getResponseBody());
+                InputStream input = exchange.getRequestBody();
+                ContentEncoding requestEncoding = ContentEncoding.forValue(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+                if (requestEncoding != null) {
+                    input = requestEncoding.decode(input);
+                }
+
+                ContentEncoding responseEncoding = ContentEncoding.negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+                if (responseEncoding == null) {
+                    configureSuccessfulResponse(exchange);
+                    doExecute(input, exchange.getResponseBody());
+                } else {
+                    OutputStream output = new ThresholdEncodingOutputStream(responseEncoding, compressionThreshold) {
+                        @Override
+                        protected OutputStream startResponse(ContentEncoding encoding, int contentLength) throws IOException {
+                            if (encoding != null) {
+                                exchange.getResponseHeaders().set("Content-Encoding", encoding.getValue());
+                            }
+                            configureSuccessfulResponse(exchange);
+                            return exchange.getResponseBody();
+                        }
+                    };
+                    doExecute(input, output);
+                    output.close();
+                }
             }
         } catch (IOException ignore) {
 
@@ -34,6 +61,20 @@ public class RemoteControlHttpHandler implements HttpHandler {
 
     }
 
+    /**
+     * The size, in bytes, below which results are sent uncompressed. Defaults to {@link ContentEncoding#DEFAULT_THRESHOLD}.
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        if (compressionThreshold < 0) {
+            throw new IllegalArgumentException("compressionThreshold must not be negative");
+        }
+        this.compressionThreshold = compressionThreshold;
+    }
+
     /**
      * Validate that this request is valid.
      *
@@ -50,12 +91,22 @@ public class RemoteControlHttpHandler implements HttpHandler {
             return false;
         }
 
-        if (!exchange.getRequestHeaders().getFirst("Content-Type").equals(ContentType.COMMAND.getValue())) {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (!ContentType.COMMAND.matches(contentType)) {
             exchange.sendResponseHeaders(415, 0);
             exchange.getResponseBody().write(("Content type must be " + ContentType.COMMAND).getBytes("UTF-8"));
             return false;
         }
 
+        try {
+            Codecs.forContentType(contentType);
+            ContentEncoding.forValue(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+        } catch (IllegalArgumentException e) {
+            exchange.sendResponseHeaders(415, 0);
+            exchange.getResponseBody().write(e.getMessage().getBytes("UTF-8"));
+            return false;
+        }
+
         return true;
     }
 
@@ -65,7 +116,8 @@ public class RemoteControlHttpHandler implements HttpHandler {
      * Subclasses should call this implementation to set the status code and return content type.
      */
     protected void configureSuccessfulResponse(HttpExchange exchange) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", ContentType.RESULT.getValue());
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        exchange.getResponseHeaders().set("Content-Type", ContentType.RESULT.getValue(Codecs.forContentType(contentType)));
         exchange.sendResponseHeaders(200, 0);
     }
 
@@ -1,5 +1,7 @@
 package io.remotecontrol.transport.http;
 
+import io.remotecontrol.codec.Codec;
+import io.remotecontrol.codec.Codecs;
 import io.remotecontrol.groovy.ContentType;
 import io.remotecontrol.server.Receiver;
 
@@ -14,17 +16,67 @@ import java.io.OutputStream;
 
 /**
  * A servlet implementation for receiving commands.
+ *
+ * Compressed command chains are accepted, and results are compressed if the client accepts it and they are not smaller than
+ * the compression threshold, which can be set with the {@value #COMPRESSION_THRESHOLD_PARAMETER} init parameter (see {@link ContentEncoding}).
  */
 public abstract class RemoteControlServlet extends HttpServlet {
 
+    public static final String COMPRESSION_THRESHOLD_PARAMETER = "compressionThreshold";
+
+    private int compressionThreshold = ContentEncoding.DEFAULT_THRESHOLD;
+    private Receiver receiver;
+
     public void init(ServletConfig config) throws ServletException {
         super.init(config);
+        String threshold = config.getInitParameter(COMPRESSION_THRESHOLD_PARAMETER);
+        if (threshold != null) {
+            int value;
+            try {
+                value = Integer.parseInt(threshold.trim());
+            } catch (NumberFormatException e) {
+                throw new ServletException("Invalid " + COMPRESSION_THRESHOLD_PARAMETER + ": " + threshold, e);
+            }
+            if (value < 0) {
+                throw new ServletException("Invalid " + COMPRESSION_THRESHOLD_PARAMETER + " (must not be negative): " + threshold);
+            }
+            compressionThreshold = value;
+        }
+        receiver = createReceiver();
     }
 
-    public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+    public void doPost(HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
         if (validateRequest(request, response)) {
             configureSuccessfulResponse(response);
-            doExecute(request.getInputStream(), response.getOutputStream());
+            Codec codec = Codecs.forContentType(request.getContentType());
+            if (codec != Codecs.getDefault()) {
+                response.setContentType(ContentType.RESULT.getValue(codec));
+            }
+
+            InputStream input = request.getInputStream();
+            ContentEncoding requestEncoding = ContentEncoding.forValue(request.getHeader("Content-Encoding"));
+            if (requestEncoding != null) {
+                input = requestEncoding.decode(input);
+            }
+
+            ContentEncoding responseEncoding = ContentEncoding.negotiate(request.getHeader("Accept-Encoding"));
+            if (responseEncoding == null) {
+                doExecute(input, response.getOutputStream());
+            } else {
+                OutputStream output = new ThresholdEncodingOutputStream(responseEncoding, compressionThreshold) {
+                    @Override
+                    protected OutputStream startResponse(ContentEncoding encoding, int contentLength) throws IOException {
+                        if (encoding == null) {
+                            response.setContentLength(contentLength);
+                        } else {
+                            response.setHeader("Content-Encoding", encoding.getValue());
+                        }
+                        return response.getOutputStream();
+                    }
+                };
+                doExecute(input, output);
+                output.close();
+            }
         }
     }
 
@@ -39,11 +91,19 @@ public abstract class RemoteControlServlet extends HttpServlet {
      */
     protected boolean validateRequest(HttpServletRequest request, HttpServletResponse response) throws IOException {
         String contentType = request.getContentType();
-        if (contentType == null || !contentType.equals(ContentType.COMMAND.getValue())) {
+        if (!ContentType.COMMAND.matches(contentType)) {
             response.sendError(415, "Only remotecontrol control commands can be sent");
             return false;
         }
 
+        try {
+            Codecs.forContentType(contentType);
+            ContentEncoding.forValue(request.getHeader("Content-Encoding"));
+        } catch (IllegalArgumentException e) {
+            response.sendError(415, e.getMessage());
+            return false;
+        }
+
         return true;
     }
 
@@ -60,14 +120,12 @@ public abstract class RemoteControlServlet extends HttpServlet {
      * Hook for subclasses to wrap the actual execution.
      */
     protected void doExecute(InputStream input, OutputStream output) throws IOException {
-        Receiver receiver = createReceiver();
         receiver.execute(input, output);
     }
 
     /**
-     * Hook for subclasses to provide a custom receiver. Will be called during init().
-     *
-     * This implement returns a receiver created via the default constructor.
+     * Hook for subclasses to provide a custom receiver. Will be called once, during init(), and the receiver is then used
+     * for every request so that the state it keeps between command chains (e.g. cached class loaders) is retained.
      */
     abstract protected Receiver createReceiver();
 }
@@ -0,0 +1,92 @@
+package io.remotecontrol.transport.http;
+
+import io.remotecontrol.util.DirectByteArrayOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A response body that is only compressed if it is not smaller than the compression threshold.
+ *
+ * Content is buffered until it reaches the threshold, at which point the response is started compressed and the content
+ * is streamed through the encoder from then on. Content that stays below the threshold is sent as is when the stream is
+ * closed. So at most the threshold's worth of content is ever buffered.
+ */
+abstract class ThresholdEncodingOutputStream extends OutputStream {
+
+    private final ContentEncoding encoding;
+    private final int threshold;
+    private DirectByteArrayOutputStream buffer = new DirectByteArrayOutputStream();
+    private OutputStream output;
+    private boolean closed;
+
+    ThresholdEncodingOutputStream(ContentEncoding encoding, int threshold) {
+        this.encoding = encoding;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Starts the response, before any of its body is written.
+     *
+     * @param encoding the encoding the body is compressed with, or null if it is not compressed
+     * @param contentLength the length of the body, or -1 if it is compressed
+     * @return the stream to write the body to
+     */
+    protected abstract OutputStream startResponse(ContentEncoding encoding, int contentLength) throws IOException;
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (output == null && buffer.size() + length >= threshold) {
+            startEncoding();
+        }
+
+        if (output == null) {
+            buffer.write(bytes, offset, length);
+        } else {
+            output.write(bytes, offset, length);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // Flushing while buffering would commit the response before it is known whether to compress it
+        if (output != null) {
+            output.flush();
+        }
+    }
+
+    /**
+     * Finishes the response, sending the buffered content if it never reached the threshold.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (output == null && buffer.size() >= threshold) {
+            startEncoding();
+        }
+
+        if (output == null) {
+            OutputStream body = startResponse(null, buffer.size());
+            buffer.writeTo(body);
+            body.flush();
+        } else {
+            output.close();
+        }
+    }
+
+    private void startEncoding() throws IOException {
+        output = encoding.encode(startResponse(encoding, -1));
+        buffer.writeTo(output);
+        buffer = null;
+    }
+
+}
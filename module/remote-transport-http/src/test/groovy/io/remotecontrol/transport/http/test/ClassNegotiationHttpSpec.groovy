@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.transport.http.test
+
+import com.sun.net.httpserver.HttpServer
+import io.remotecontrol.CommandChain
+import io.remotecontrol.groovy.ClassDefinitionsQuery
+import io.remotecontrol.groovy.ClosureCommand
+import io.remotecontrol.groovy.client.ClassNegotiatingTransport
+import io.remotecontrol.groovy.client.RemoteControl
+import io.remotecontrol.groovy.server.ClosureCommandRunner
+import io.remotecontrol.result.Result
+import io.remotecontrol.result.impl.DefaultResultFactory
+import io.remotecontrol.server.MultiTypeReceiver
+import io.remotecontrol.server.StorageContextFactory
+import io.remotecontrol.transport.http.HttpTransport
+import io.remotecontrol.transport.http.RemoteControlHttpHandler
+import io.remotecontrol.util.FilteringClassLoader
+import spock.lang.Specification
+
+import java.util.concurrent.Executors
+
+class ClassNegotiationHttpSpec extends Specification {
+
+    def server
+    def sent = []
+
+    def "falls back to sending full chains when the receiver cannot load the query class"() {
+        given:
+        // a receiver that predates class negotiation, which fails the request instead of naming the query type in its answer
+        def serverClassLoader = new FilteringClassLoader(getClass().classLoader, getClass().package.name, ClassDefinitionsQuery.name)
+        def runner = new ClosureCommandRunner(serverClassLoader, StorageContextFactory.withEmptyStorage(), new DefaultResultFactory())
+        server = HttpServer.create(new InetSocketAddress(0), 0)
+        server.createContext("/", new RemoteControlHttpHandler(new MultiTypeReceiver(serverClassLoader, runner)))
+        server.executor = Executors.newSingleThreadExecutor()
+        server.start()
+
+        def transport = new ClassNegotiatingTransport(recording("http://localhost:${server.address.port}"))
+        def remote = new RemoteControl(transport)
+
+        def commands = [{ 1 }, { 2 }, { 3 }, { 4 }, { 5 }]
+
+        when:
+        def results = commands.collect { remote.exec(it) }
+
+        then:
+        results == [1, 2, 3, 4, 5]
+        transport.negotiationUnsupported
+        sent == [ClassDefinitionsQuery, ClosureCommand] * ClassNegotiatingTransport.DEFAULT_MAX_QUERY_FAILURES +
+            [ClosureCommand] * (commands.size() - ClassNegotiatingTransport.DEFAULT_MAX_QUERY_FAILURES)
+    }
+
+    HttpTransport recording(String url) {
+        def types = sent
+        new HttpTransport(url) {
+            @Override
+            Result send(CommandChain commandChain) {
+                types << commandChain.type
+                super.send(commandChain)
+            }
+        }
+    }
+
+    def cleanup() {
+        server?.stop(0)
+    }
+
+}
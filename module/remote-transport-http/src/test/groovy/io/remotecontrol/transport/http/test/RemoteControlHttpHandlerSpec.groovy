@@ -16,22 +16,29 @@
 package io.remotecontrol.transport.http.test
 
 import com.sun.net.httpserver.HttpServer
+import io.remotecontrol.codec.Codecs
 import io.remotecontrol.groovy.client.RemoteControl
 import io.remotecontrol.groovy.server.ClosureReceiver
+import io.remotecontrol.transport.http.ContentEncoding
 import io.remotecontrol.transport.http.HttpTransport
 import io.remotecontrol.transport.http.RemoteControlHttpHandler
 import io.remotecontrol.util.FilteringClassLoader
 import spock.lang.Shared
 import spock.lang.Specification
 
+import com.sun.net.httpserver.HttpExchange
 import java.util.concurrent.Executors
 
 class RemoteControlHttpHandlerSpec extends Specification {
 
     @Shared
         remote
+    @Shared
+        binaryRemote
     @Shared
         server
+    @Shared
+        clientPorts = []
 
     def setupSpec() {
         // we need to create a classloader for the "server" side that cannot access
@@ -41,14 +48,25 @@ class RemoteControlHttpHandlerSpec extends Specification {
 
         def receiver = new ClosureReceiver(serverClassLoader)
 
-        server = HttpServer.create(new InetSocketAddress(0), 1)
-        server.createContext("/", new RemoteControlHttpHandler(receiver))
+        server = HttpServer.create(new InetSocketAddress(0), 0)
+        def ports = clientPorts
+        server.createContext("/", new RemoteControlHttpHandler(receiver) {
+            @Override
+            protected void configureSuccessfulResponse(HttpExchange exchange) throws IOException {
+                ports << exchange.remoteAddress.port
+                super.configureSuccessfulResponse(exchange)
+            }
+        })
         server.executor = Executors.newSingleThreadExecutor()
         server.start()
 
         Thread.sleep(2000)
 
         remote = new RemoteControl(new HttpTransport("http://localhost:${server.address.port}" as String))
+
+        def binaryTransport = new HttpTransport("http://localhost:${server.address.port}" as String)
+        binaryTransport.codec = Codecs.BINARY
+        binaryRemote = new RemoteControl(binaryTransport)
     }
 
     def "test the handler"() {
@@ -56,6 +74,54 @@ class RemoteControlHttpHandlerSpec extends Specification {
         remote.exec { def a = 2; a + 2 } == 4
     }
 
+    def "connections are kept alive between commands"() {
+        given:
+        clientPorts.clear()
+
+        when:
+        3.times { assert remote.exec { 1 } == 1 }
+
+        then:
+        clientPorts.size() == 3
+        clientPorts.unique().size() == 1
+    }
+
+    def "commands can be sent asynchronously"() {
+        when:
+        def futures = (1..20).collect { n -> remote.execAsync { n * 2 } }
+
+        then:
+        futures*.get() == (1..20).collect { it * 2 }
+    }
+
+    def "commands can be sent with the binary codec"() {
+        expect:
+        binaryRemote.exec { def a = 2; a + 2 } == 4
+        binaryRemote.exec { null } == null
+    }
+
+    def "commands and results can be compressed"() {
+        given:
+        def connections = []
+        def transport = new HttpTransport("http://localhost:${server.address.port}" as String) {
+            @Override
+            protected void configureConnection(HttpURLConnection connection) {
+                connections << connection
+            }
+        }
+        transport.requestEncoding = ContentEncoding.DEFLATE
+        transport.compressionThreshold = 0
+        def compressedRemote = new RemoteControl(transport)
+
+        expect:
+        compressedRemote.exec { "x" * 10000 } == "x" * 10000
+        connections[0].getHeaderField("Content-Encoding") == "deflate"
+
+        and:
+        compressedRemote.exec { 1 } == 1
+        connections[1].getHeaderField("Content-Encoding") == null
+    }
+
     def cleanupSpec() {
         server.stop(0)
     }
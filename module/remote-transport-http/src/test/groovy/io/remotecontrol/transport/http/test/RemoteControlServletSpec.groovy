@@ -15,9 +15,15 @@
  */
 package io.remotecontrol.transport.http.test
 
+import io.remotecontrol.CommandChain
+import io.remotecontrol.groovy.ClassDefinitionsQuery
+import io.remotecontrol.groovy.ClosureCommand
+import io.remotecontrol.groovy.client.ClassNegotiatingTransport
 import io.remotecontrol.groovy.client.RemoteControl
 import io.remotecontrol.groovy.server.ClosureReceiver
+import io.remotecontrol.result.Result
 import io.remotecontrol.server.Receiver
+import io.remotecontrol.transport.http.ContentEncoding
 import io.remotecontrol.transport.http.HttpTransport
 import io.remotecontrol.transport.http.RemoteControlServlet
 import io.remotecontrol.util.FilteringClassLoader
@@ -27,6 +33,9 @@ import org.mortbay.jetty.servlet.ServletHolder
 import spock.lang.Shared
 import spock.lang.Specification
 
+import javax.servlet.ServletConfig
+import javax.servlet.ServletException
+
 class RemoteControlServletSpec extends Specification {
 
     @Shared
@@ -35,6 +44,8 @@ class RemoteControlServletSpec extends Specification {
         server
     @Shared
         endpointUrl
+    @Shared
+        receivers = []
 
     def setupSpec() {
         // we need to create a classloader for the "server" side that cannot access
@@ -44,10 +55,13 @@ class RemoteControlServletSpec extends Specification {
 
         server = new Server(0)
         def context = new Context(server, "/")
+        def created = receivers
         def servlet = new RemoteControlServlet() {
             @Override
             protected Receiver createReceiver() {
-                return new ClosureReceiver(serverClassLoader)
+                def receiver = new ClosureReceiver(serverClassLoader)
+                created << receiver
+                return receiver
             }
         }
         context.addServlet(new ServletHolder(servlet), "/*")
@@ -64,6 +78,43 @@ class RemoteControlServletSpec extends Specification {
         remote.exec { def a = 2; a + 2 } == 4
     }
 
+    def "the same receiver is used for every request"() {
+        when:
+        3.times { assert remote.exec { 1 } == 1 }
+
+        then:
+        receivers.size() == 1
+    }
+
+    def "class definitions are only sent until the receiver has them"() {
+        given:
+        def sent = []
+        def transport = new HttpTransport(endpointUrl as String) {
+            @Override
+            Result send(CommandChain commandChain) {
+                sent << commandChain
+                super.send(commandChain)
+            }
+        }
+        def negotiatingRemote = new RemoteControl(new ClassNegotiatingTransport(transport))
+        def command = { [1, 2].collect { it * 2 } }
+
+        when:
+        def first = negotiatingRemote.exec(command)
+        def second = negotiatingRemote.exec(command)
+
+        then:
+        first == [2, 4]
+        second == [2, 4]
+        sent*.type == [ClassDefinitionsQuery, ClosureCommand, ClosureCommand]
+        !sent[2].commands[0].hasClassDefinitions()
+    }
+
+    def "results can be streamed in chunks"() {
+        expect:
+        remote.stream(chunkSize: 2) { (1..5).iterator() }.collect() == [1, 2, 3, 4, 5]
+    }
+
     def "hit direct"() {
         when:
         HttpURLConnection connection = new URL(endpointUrl).openConnection()
@@ -73,6 +124,45 @@ class RemoteControlServletSpec extends Specification {
         connection.responseCode == 415
     }
 
+    def "commands and results can be compressed"() {
+        given:
+        def connections = []
+        def transport = new HttpTransport("http://localhost:${server.connectors[0].localPort}" as String) {
+            @Override
+            protected void configureConnection(HttpURLConnection connection) {
+                connections << connection
+            }
+        }
+        transport.requestEncoding = ContentEncoding.GZIP
+        transport.compressionThreshold = 0
+        def compressedRemote = new RemoteControl(transport)
+
+        expect:
+        compressedRemote.exec { "x" * 10000 } == "x" * 10000
+        connections[0].getHeaderField("Content-Encoding") == "deflate"
+
+        and:
+        compressedRemote.exec { 1 } == 1
+        connections[1].getHeaderField("Content-Encoding") == null
+    }
+
+    def "a negative compression threshold is rejected"() {
+        given:
+        def servlet = new RemoteControlServlet() {
+            @Override
+            protected Receiver createReceiver() {
+                return new ClosureReceiver(getClass().classLoader)
+            }
+        }
+        def config = [getInitParameter: { String name -> name == RemoteControlServlet.COMPRESSION_THRESHOLD_PARAMETER ? "-1" : null }] as ServletConfig
+
+        when:
+        servlet.init(config)
+
+        then:
+        thrown(ServletException)
+    }
+
     def cleanupSpec() {
         server.stop()
     }
@@ -1,26 +1,51 @@
 package io.remotecontrol.transport.local;
 
 import io.remotecontrol.CommandChain;
-import io.remotecontrol.client.Transport;
+import io.remotecontrol.client.AsyncTransport;
 import io.remotecontrol.result.Result;
 import io.remotecontrol.result.ResultFactory;
 import io.remotecontrol.result.impl.DefaultResultFactory;
+import io.remotecontrol.server.CommandChainReceiver;
 import io.remotecontrol.server.Receiver;
+import io.remotecontrol.util.DirectByteArrayOutputStream;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
-public class LocalTransport implements Transport {
+/**
+ * A transport that sends command chains to a receiver in the same JVM.
+ *
+ * If the receiver is a {@link CommandChainReceiver} (which means it shares the remote control classes with this transport),
+ * the command chain is handed to it as is and its result is returned without being serialised. Otherwise, the chain and
+ * result are serialised into buffers that are read back without being copied.
+ *
+ * The result factory and class loader are only used to read serialised results, so they have no effect when the receiver
+ * is a {@link CommandChainReceiver}. Its results are returned as the receiver's own result factory created them.
+ */
+public class LocalTransport implements AsyncTransport {
 
     private final ClassLoader classLoader;
     private final Receiver receiver;
     private final ResultFactory resultFactory;
+    private final Executor executor;
 
-    public LocalTransport(Receiver receiver, ClassLoader classLoader, ResultFactory resultFactory) {
+    /**
+     * @param classLoader the class loader that serialised results are read with
+     * @param resultFactory the result factory that serialised results are read with
+     * @param executor the executor that asynchronously sent command chains are executed by, or null to execute them in the sending thread
+     */
+    public LocalTransport(Receiver receiver, ClassLoader classLoader, ResultFactory resultFactory, Executor executor) {
         this.resultFactory = resultFactory;
         this.receiver = receiver;
         this.classLoader = classLoader;
+        this.executor = executor;
+    }
+
+    public LocalTransport(Receiver receiver, ClassLoader classLoader, ResultFactory resultFactory) {
+        this(receiver, classLoader, resultFactory, null);
     }
 
     public LocalTransport(Receiver receiver, ClassLoader classLoader) {
@@ -28,14 +53,34 @@ public class LocalTransport implements Transport {
     }
 
     public Result send(CommandChain commandChain) throws IOException {
-        ByteArrayOutputStream commandBytes = new ByteArrayOutputStream();
+        if (receiver instanceof CommandChainReceiver) {
+            return ((CommandChainReceiver) receiver).execute(commandChain);
+        }
+
+        DirectByteArrayOutputStream commandBytes = new DirectByteArrayOutputStream();
         commandChain.writeTo(commandBytes);
 
-        ByteArrayOutputStream resultBytes = new ByteArrayOutputStream();
+        DirectByteArrayOutputStream resultBytes = new DirectByteArrayOutputStream();
+
+        receiver.execute(commandBytes.toInputStream(), resultBytes);
+
+        return resultFactory.deserialize(resultBytes.toInputStream(), classLoader);
+    }
+
+    public Future<Result> sendAsync(final CommandChain<?> commandChain) {
+        FutureTask<Result> task = new FutureTask<Result>(new Callable<Result>() {
+            public Result call() throws Exception {
+                return send(commandChain);
+            }
+        });
 
-        receiver.execute(new ByteArrayInputStream(commandBytes.toByteArray()), resultBytes);
+        if (executor == null) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
 
-        return resultFactory.deserialize(new ByteArrayInputStream(resultBytes.toByteArray()), classLoader);
+        return task;
     }
 
 }
@@ -0,0 +1,137 @@
+package io.remotecontrol.transport.socket;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A message of the socket protocol.
+ *
+ * Each frame is a header of the correlation id (int), the type (byte) and the payload length (int), followed by the payload.
+ * Requests carry a command chain, and are answered by a result or error frame with the same correlation id. The payloads of
+ * requests and results are written by a {@link io.remotecontrol.codec.Codec}, and errors carry a UTF-8 message.
+ */
+final class Frame {
+
+    static final byte REQUEST = 0;
+    static final byte RESULT = 1;
+    static final byte ERROR = 2;
+
+    static final int HEADER_LENGTH = 9;
+
+    private static final int SKIP_BUFFER_SIZE = 8192;
+
+    private final int correlationId;
+    private final byte type;
+    private final int payloadLength;
+    private final byte[] payload;
+
+    private Frame(int correlationId, byte type, int payloadLength, byte[] payload) {
+        this.correlationId = correlationId;
+        this.type = type;
+        this.payloadLength = payloadLength;
+        this.payload = payload;
+    }
+
+    int getCorrelationId() {
+        return correlationId;
+    }
+
+    byte getType() {
+        return type;
+    }
+
+    int getPayloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * Whether the payload was longer than the reader accepts, in which case it has been skipped and is not available.
+     */
+    boolean isOversized() {
+        return payload == null;
+    }
+
+    byte[] getPayload() {
+        return payload;
+    }
+
+    String getErrorMessage() {
+        try {
+            return new String(payload, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the next frame, blocking until it has been read completely.
+     *
+     * A payload longer than the maximum is skipped rather than read into memory, so that the frame can be failed on its
+     * own without losing the other frames on the channel (see {@link #isOversized()}).
+     *
+     * @throws EOFException if the channel is closed by the other end
+     */
+    static Frame read(ReadableByteChannel channel, int maxPayloadLength) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        readFully(channel, header);
+        header.flip();
+
+        int correlationId = header.getInt();
+        byte type = header.get();
+        int length = header.getInt();
+        if (length < 0) {
+            throw new IOException("Invalid frame payload length: " + length);
+        }
+
+        if (length > maxPayloadLength) {
+            skip(channel, length);
+            return new Frame(correlationId, type, length, null);
+        }
+
+        byte[] payload = new byte[length];
+        readFully(channel, ByteBuffer.wrap(payload));
+        return new Frame(correlationId, type, length, payload);
+    }
+
+    /**
+     * Writes a frame. Callers must ensure that frames are not written to the same channel concurrently.
+     */
+    static void write(GatheringByteChannel channel, int correlationId, byte type, ByteBuffer payload) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(correlationId).put(type).putInt(payload.remaining());
+        header.flip();
+
+        ByteBuffer[] buffers = {header, payload};
+        while (header.hasRemaining() || payload.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    static void writeError(GatheringByteChannel channel, int correlationId, String message) throws IOException {
+        write(channel, correlationId, ERROR, ByteBuffer.wrap(String.valueOf(message).getBytes("UTF-8")));
+    }
+
+    private static void skip(ReadableByteChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, SKIP_BUFFER_SIZE));
+        int remaining = length;
+        while (remaining > 0) {
+            buffer.clear();
+            buffer.limit(Math.min(remaining, buffer.capacity()));
+            readFully(channel, buffer);
+            remaining -= buffer.limit();
+        }
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("connection closed");
+            }
+        }
+    }
+
+}
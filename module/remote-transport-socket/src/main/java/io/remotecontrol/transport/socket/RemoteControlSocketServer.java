@@ -0,0 +1,274 @@
+package io.remotecontrol.transport.socket;
+
+import io.remotecontrol.server.Receiver;
+import io.remotecontrol.util.DirectByteArrayOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Receives command chains from {@link SocketTransport}s, and executes them with a receiver.
+ *
+ * Each connection has a daemon thread that reads requests, which are executed by an executor. Results are written back as soon as
+ * they are complete, so the requests of a connection can complete in any order. Unless an executor is given, a pool of up to
+ * {@link #DEFAULT_THREADS} daemon threads is used, with a queue of up to {@link #DEFAULT_QUEUE_SIZE} waiting command chains.
+ * Requests that the executor rejects fail with an error, instead of being read faster than they can be executed.
+ */
+public class RemoteControlSocketServer implements Closeable {
+
+    public static final int DEFAULT_THREADS = 16;
+    public static final int DEFAULT_QUEUE_SIZE = 64;
+
+    private static final long MIN_ACCEPT_BACK_OFF = 10;
+    private static final long MAX_ACCEPT_BACK_OFF = 1000;
+
+    private final Receiver receiver;
+    private final InetSocketAddress bindAddress;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Set<SocketChannel> connections = Collections.synchronizedSet(new HashSet<SocketChannel>());
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    private volatile int maxPayloadLength = SocketTransport.DEFAULT_MAX_PAYLOAD_LENGTH;
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * @param executor the executor that executes command chains
+     */
+    public RemoteControlSocketServer(Receiver receiver, InetSocketAddress bindAddress, ExecutorService executor) {
+        this(receiver, bindAddress, executor, false);
+    }
+
+    /**
+     * @param port the port to listen on, or 0 for any free port
+     */
+    public RemoteControlSocketServer(Receiver receiver, int port) {
+        this(receiver, new InetSocketAddress(port), null, true);
+    }
+
+    private RemoteControlSocketServer(Receiver receiver, InetSocketAddress bindAddress, ExecutorService executor, boolean ownsExecutor) {
+        this.receiver = receiver;
+        this.bindAddress = bindAddress;
+        this.ownsExecutor = ownsExecutor;
+        this.executor = ownsExecutor ? createDefaultExecutor() : executor;
+    }
+
+    private ExecutorService createDefaultExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(DEFAULT_QUEUE_SIZE), new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                return newDaemonThread(runnable, "remote-control-socket-executor-");
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Starts listening for connections.
+     */
+    public synchronized void start() throws IOException {
+        if (serverChannel != null) {
+            throw new IllegalStateException("server has already been started");
+        }
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(bindAddress);
+        newDaemonThread(new Acceptor(serverChannel), "remote-control-socket-acceptor-").start();
+    }
+
+    /**
+     * The port that the server is listening on.
+     */
+    public synchronized int getPort() {
+        if (serverChannel == null) {
+            throw new IllegalStateException("server has not been started");
+        }
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops listening, and closes all connections. The executor is shut down if it was created by this server.
+     */
+    public synchronized void close() {
+        if (serverChannel != null) {
+            closeQuietly(serverChannel);
+        }
+
+        List<SocketChannel> toClose;
+        synchronized (connections) {
+            toClose = new ArrayList<SocketChannel>(connections);
+            connections.clear();
+        }
+        for (SocketChannel connection : toClose) {
+            closeQuietly(connection);
+        }
+
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The maximum length of a command chain, in bytes. A longer command chain is failed on its own, without affecting the
+     * others on the connection. Defaults to {@link SocketTransport#DEFAULT_MAX_PAYLOAD_LENGTH}.
+     */
+    public int getMaxPayloadLength() {
+        return maxPayloadLength;
+    }
+
+    public void setMaxPayloadLength(int maxPayloadLength) {
+        if (maxPayloadLength < 0) {
+            throw new IllegalArgumentException("maxPayloadLength must not be negative");
+        }
+        this.maxPayloadLength = maxPayloadLength;
+    }
+
+    private Thread newDaemonThread(Runnable runnable, String namePrefix) {
+        Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignore) {
+            // ignore
+        }
+    }
+
+    private class Acceptor implements Runnable {
+
+        private final ServerSocketChannel serverChannel;
+
+        Acceptor(ServerSocketChannel serverChannel) {
+            this.serverChannel = serverChannel;
+        }
+
+        public void run() {
+            long backOff = 0;
+            while (serverChannel.isOpen()) {
+                SocketChannel channel;
+                try {
+                    channel = serverChannel.accept();
+                } catch (IOException e) {
+                    // closed, or a failed accept (e.g. out of file descriptors), which is likely to fail again straight away
+                    backOff = backOff == 0 ? MIN_ACCEPT_BACK_OFF : Math.min(backOff * 2, MAX_ACCEPT_BACK_OFF);
+                    try {
+                        Thread.sleep(backOff);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                    continue;
+                }
+
+                backOff = 0;
+                boolean started = false;
+                try {
+                    channel.socket().setTcpNoDelay(true);
+                    connections.add(channel);
+                    newDaemonThread(new ConnectionReader(channel), "remote-control-socket-connection-").start();
+                    started = true;
+                } catch (IOException e) {
+                    // the connection is dropped, and the client has to connect again
+                } finally {
+                    if (!started) {
+                        connections.remove(channel);
+                        closeQuietly(channel);
+                    }
+                }
+            }
+        }
+    }
+
+    private class ConnectionReader implements Runnable {
+
+        private final SocketChannel channel;
+        private final Object writeLock = new Object();
+
+        ConnectionReader(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    int maxLength = maxPayloadLength;
+                    final Frame frame = Frame.read(channel, maxLength);
+                    if (frame.getType() != Frame.REQUEST) {
+                        throw new IOException("Unexpected frame type: " + frame.getType());
+                    }
+
+                    if (frame.isOversized()) {
+                        writeError(frame.getCorrelationId(), "Command chain of " + frame.getPayloadLength() + " bytes exceeds the maximum payload length of " + maxLength + " bytes");
+                        continue;
+                    }
+
+                    try {
+                        executor.execute(new Runnable() {
+                            public void run() {
+                                execute(frame);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        writeError(frame.getCorrelationId(), "The server is too busy to execute the command chain");
+                    }
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void execute(Frame request) {
+            DirectByteArrayOutputStream result = new DirectByteArrayOutputStream();
+            try {
+                receiver.execute(new ByteArrayInputStream(request.getPayload()), result);
+            } catch (Throwable e) {
+                // including errors (e.g. a LinkageError), as the client waits for a frame for every request
+                writeError(request.getCorrelationId(), e.toString());
+                return;
+            }
+
+            try {
+                synchronized (writeLock) {
+                    Frame.write(channel, request.getCorrelationId(), Frame.RESULT, result.toByteBuffer());
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void writeError(int correlationId, String message) {
+            try {
+                synchronized (writeLock) {
+                    Frame.writeError(channel, correlationId, message);
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void close() {
+            connections.remove(channel);
+            closeQuietly(channel);
+        }
+    }
+
+}
@@ -0,0 +1,373 @@
+package io.remotecontrol.transport.socket;
+
+import io.remotecontrol.CommandChain;
+import io.remotecontrol.RemoteControlException;
+import io.remotecontrol.client.AsyncTransport;
+import io.remotecontrol.codec.Codec;
+import io.remotecontrol.codec.Codecs;
+import io.remotecontrol.metrics.Metrics;
+import io.remotecontrol.metrics.MetricsListener;
+import io.remotecontrol.metrics.Phase;
+import io.remotecontrol.result.Result;
+import io.remotecontrol.result.ResultFactory;
+import io.remotecontrol.result.impl.DefaultResultFactory;
+import io.remotecontrol.util.DirectByteArrayOutputStream;
+import io.remotecontrol.util.TransformingFuture;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transports commands over a single persistent socket connection to a {@link RemoteControlSocketServer}.
+ *
+ * Any number of command chains can be in flight at once. Each request is tagged with a correlation id, and results are matched
+ * to requests by id as they arrive, in whatever order the server completes them. Results are read by a daemon thread per connection.
+ *
+ * The connection is opened when the first command chain is sent, and opened again if it is lost. Command chains that were in
+ * flight when a connection is lost fail with a {@link RemoteControlException}. If a read timeout is set, {@link #send(CommandChain)}
+ * gives up waiting for a result after that long, and fails with a {@link RemoteControlException}.
+ */
+public class SocketTransport implements AsyncTransport, Closeable {
+
+    public static final int DEFAULT_MAX_PAYLOAD_LENGTH = 64 * 1024 * 1024;
+
+    private final InetSocketAddress address;
+    private final ClassLoader classLoader;
+    private final ResultFactory resultFactory;
+    private final AtomicInteger correlationIds = new AtomicInteger();
+
+    private volatile Codec codec = Codecs.getDefault();
+    private volatile int connectTimeout;
+    private volatile int readTimeout;
+    private volatile int maxPayloadLength = DEFAULT_MAX_PAYLOAD_LENGTH;
+    private Connection connection;
+
+    /**
+     * @param classLoader the class loader to use when unserialising the result
+     */
+    public SocketTransport(InetSocketAddress address, ClassLoader classLoader, ResultFactory resultFactory) {
+        this.address = address;
+        this.classLoader = classLoader;
+        this.resultFactory = resultFactory;
+    }
+
+    /**
+     * @param classLoader the class loader to use when unserialising the result
+     */
+    public SocketTransport(String host, int port, ClassLoader classLoader) {
+        this(new InetSocketAddress(host, port), classLoader, new DefaultResultFactory());
+    }
+
+    public SocketTransport(String host, int port) {
+        this(host, port, Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * Sends the command chain, waiting for its result.
+     *
+     * @throws RemoteControlException if the chain could not be sent, or the connection was lost before the result was received
+     */
+    public Result send(CommandChain commandChain) throws RemoteControlException {
+        Future<Result> result = sendAsync(commandChain);
+        try {
+            return readTimeout == 0 ? result.get() : result.get(readTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(false);
+            throw new RemoteControlException("Timed out after " + readTimeout + "ms waiting for result from '" + address + "'", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteControlException("Interrupted while waiting for result from '" + address + "'", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RemoteControlException) {
+                throw (RemoteControlException) cause;
+            }
+            throw new RemoteControlException("Error sending command chain to '" + address + "'", cause);
+        }
+    }
+
+    /**
+     * Sends the command chain, returning a future for its result without waiting for it.
+     */
+    public Future<Result> sendAsync(CommandChain<?> commandChain) {
+        DirectByteArrayOutputStream commandBytes = new DirectByteArrayOutputStream();
+        commandChain.writeTo(commandBytes, codec);
+
+        PendingResult pending = new PendingResult();
+        Metrics.getListener().bytes(Phase.SEND, commandBytes.size());
+        try {
+            getConnection().send(correlationIds.incrementAndGet(), commandBytes, pending);
+        } catch (IOException e) {
+            throw new RemoteControlException("Error sending command chain to '" + address + "'", e);
+        }
+
+        return new TransformingFuture<byte[], Result>(pending) {
+            @Override
+            protected Result transform(byte[] resultBytes) throws IOException {
+                return resultFactory.deserialize(new ByteArrayInputStream(resultBytes), classLoader);
+            }
+        };
+    }
+
+    /**
+     * Closes the connection, failing any command chains that are in flight.
+     */
+    public synchronized void close() {
+        if (connection != null) {
+            connection.close(null);
+            connection = null;
+        }
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the codec that command chains are written with (the server writes the result with the same codec).
+     */
+    public void setCodec(Codec codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("codec must not be null");
+        }
+        this.codec = codec;
+    }
+
+    /**
+     * The connect timeout, in milliseconds. Zero (the default) means no timeout.
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        if (connectTimeout < 0) {
+            throw new IllegalArgumentException("connectTimeout must not be negative");
+        }
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * How long {@link #send(CommandChain)} waits for the result, in milliseconds. Zero (the default) means no timeout.
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        if (readTimeout < 0) {
+            throw new IllegalArgumentException("readTimeout must not be negative");
+        }
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * The maximum length of a result, in bytes. A longer result fails its own command chain, without affecting the others
+     * on the connection. Defaults to {@link #DEFAULT_MAX_PAYLOAD_LENGTH}.
+     */
+    public int getMaxPayloadLength() {
+        return maxPayloadLength;
+    }
+
+    public void setMaxPayloadLength(int maxPayloadLength) {
+        if (maxPayloadLength < 0) {
+            throw new IllegalArgumentException("maxPayloadLength must not be negative");
+        }
+        this.maxPayloadLength = maxPayloadLength;
+    }
+
+    private synchronized Connection getConnection() throws IOException {
+        if (connection == null || connection.closed) {
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.socket().setTcpNoDelay(true);
+                channel.socket().setKeepAlive(true);
+                channel.socket().connect(address, connectTimeout);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+
+            connection = new Connection(channel);
+            Thread reader = new Thread(connection, "remote-control-socket-client-" + address);
+            reader.setDaemon(true);
+            reader.start();
+        }
+        return connection;
+    }
+
+    private class Connection implements Runnable {
+
+        private final SocketChannel channel;
+        private final ConcurrentMap<Integer, PendingResult> pending = new ConcurrentHashMap<Integer, PendingResult>();
+        private final Object writeLock = new Object();
+        private volatile boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void send(int correlationId, DirectByteArrayOutputStream commandBytes, PendingResult result) throws IOException {
+            result.register(pending, correlationId);
+            pending.put(correlationId, result);
+            if (closed) {
+                // the reader may have failed everything pending before we were added
+                pending.remove(correlationId);
+                throw new IOException("connection to '" + address + "' was closed");
+            }
+
+            try {
+                synchronized (writeLock) {
+                    Frame.write(channel, correlationId, Frame.REQUEST, commandBytes.toByteBuffer());
+                }
+            } catch (IOException e) {
+                pending.remove(correlationId);
+                close(e);
+                throw e;
+            }
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    int maxLength = maxPayloadLength;
+                    Frame frame = Frame.read(channel, maxLength);
+                    PendingResult result = pending.remove(frame.getCorrelationId());
+                    if (result != null) {
+                        if (frame.isOversized()) {
+                            result.setException(new RemoteControlException("Result of " + frame.getPayloadLength() + " bytes from '" + address + "' exceeds the maximum payload length of " + maxLength + " bytes"));
+                        } else if (frame.getType() == Frame.RESULT) {
+                            result.set(frame.getPayload());
+                        } else {
+                            result.setException(new RemoteControlException("Server '" + address + "' failed to execute command chain: " + frame.getErrorMessage()));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+
+        void close(Throwable cause) {
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+                // ignore
+            }
+
+            for (Integer correlationId : pending.keySet()) {
+                PendingResult result = pending.remove(correlationId);
+                if (result != null) {
+                    result.setException(new RemoteControlException("Connection to '" + address + "' was closed", cause));
+                }
+            }
+        }
+    }
+
+    /**
+     * A future for the bytes of a result, completed by the connection's reader.
+     */
+    private static class PendingResult implements Future<byte[]> {
+
+        private final MetricsListener metrics = Metrics.getListener();
+        private final long start = System.nanoTime();
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile Map<Integer, PendingResult> pending;
+        private volatile int correlationId;
+
+        // guarded by this, and only written before the latch is released
+        private byte[] value;
+        private Throwable throwable;
+        private boolean cancelled;
+
+        /**
+         * Registers where the result is pending, so that it is no longer waited for once cancelled.
+         */
+        void register(Map<Integer, PendingResult> pending, int correlationId) {
+            this.correlationId = correlationId;
+            this.pending = pending;
+        }
+
+        void set(byte[] value) {
+            complete(value, null, false);
+        }
+
+        void setException(Throwable throwable) {
+            complete(null, throwable, false);
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!complete(null, null, true)) {
+                return false;
+            }
+            if (pending != null) {
+                pending.remove(correlationId);
+            }
+            return true;
+        }
+
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return latch.getCount() == 0;
+        }
+
+        public byte[] get() throws InterruptedException, ExecutionException {
+            latch.await();
+            return getResult();
+        }
+
+        public byte[] get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!latch.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getResult();
+        }
+
+        /**
+         * Completes the future, unless it has already been completed.
+         *
+         * @return whether this call completed the future
+         */
+        private boolean complete(byte[] value, Throwable throwable, boolean cancelled) {
+            synchronized (this) {
+                if (isDone()) {
+                    return false;
+                }
+                this.value = value;
+                this.throwable = throwable;
+                this.cancelled = cancelled;
+                latch.countDown();
+            }
+            metrics.time(Phase.SEND, System.nanoTime() - start);
+            return true;
+        }
+
+        private synchronized byte[] getResult() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (throwable != null) {
+                throw new ExecutionException(throwable);
+            }
+            return value;
+        }
+    }
+
+}
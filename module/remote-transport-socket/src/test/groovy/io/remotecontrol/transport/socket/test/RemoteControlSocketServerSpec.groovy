@@ -0,0 +1,180 @@
+/*
+ * Copyright 2010 Luke Daley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.remotecontrol.transport.socket.test
+
+import io.remotecontrol.RemoteControlException
+import io.remotecontrol.codec.Codecs
+import io.remotecontrol.groovy.client.RemoteControl
+import io.remotecontrol.groovy.server.ClosureReceiver
+import io.remotecontrol.server.Receiver
+import io.remotecontrol.transport.socket.RemoteControlSocketServer
+import io.remotecontrol.transport.socket.SocketTransport
+import io.remotecontrol.util.FilteringClassLoader
+import spock.lang.Specification
+
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeoutException
+
+class RemoteControlSocketServerSpec extends Specification {
+
+    static final String RELEASE_PROPERTY = "remote-control.socket-spec.release"
+
+    RemoteControlSocketServer server
+    SocketTransport transport
+    RemoteControl remote
+
+    def setup() {
+        // we need to create a classloader for the "server" side that cannot access
+        // classes defined in this file.
+        def thisClassLoader = getClass().classLoader
+        def serverClassLoader = new FilteringClassLoader(thisClassLoader, getClass().package.name)
+
+        server = new RemoteControlSocketServer(new ClosureReceiver(serverClassLoader), 0)
+        server.start()
+
+        transport = new SocketTransport("localhost", server.port, thisClassLoader)
+        remote = new RemoteControl(transport, thisClassLoader)
+    }
+
+    def cleanup() {
+        transport.close()
+        server.close()
+        System.clearProperty(RELEASE_PROPERTY)
+    }
+
+    def "commands are executed"() {
+        expect:
+        remote.exec { def a = 2; a + 2 } == 4
+        remote.exec { null } == null
+    }
+
+    def "commands can be sent with the binary codec"() {
+        given:
+        transport.codec = Codecs.BINARY
+
+        expect:
+        remote.exec { def a = 2; a + 2 } == 4
+    }
+
+    def "many commands can be in flight and complete out of order"() {
+        when:
+        def slow = remote.execAsync { while (!System.getProperty("remote-control.socket-spec.release")) { Thread.sleep(10) }; "slow" }
+        def fast = (1..20).collect { n -> remote.execAsync { n * 2 } }
+
+        then:
+        fast*.get() == (1..20).collect { it * 2 }
+        !slow.done
+
+        when:
+        System.setProperty(RELEASE_PROPERTY, "true")
+
+        then:
+        slow.get() == "slow"
+    }
+
+    def "commands in flight fail when the connection is lost"() {
+        given:
+        def inFlight = remote.execAsync { Thread.sleep(10000) }
+
+        when:
+        Thread.sleep(200)
+        server.close()
+        inFlight.get()
+
+        then:
+        def e = thrown(ExecutionException)
+        e.cause instanceof RemoteControlException
+    }
+
+    def "errors thrown by the receiver are returned to the client"() {
+        given:
+        def failing = new RemoteControlSocketServer({ command, result -> throw new LinkageError("boom") } as Receiver, 0)
+        failing.start()
+        def failingTransport = new SocketTransport("localhost", failing.port, getClass().classLoader)
+
+        when:
+        new RemoteControl(failingTransport, getClass().classLoader).exec { 1 }
+
+        then:
+        def e = thrown(RemoteControlException)
+        e.message.contains("boom")
+
+        cleanup:
+        failingTransport.close()
+        failing.close()
+    }
+
+    def "send gives up waiting for a result after the read timeout"() {
+        given:
+        transport.readTimeout = 200
+
+        when:
+        remote.exec { Thread.sleep(10000) }
+
+        then:
+        def e = thrown(RemoteControlException)
+        e.cause instanceof TimeoutException
+
+        and:
+        remote.exec { 1 } == 1
+    }
+
+    def "a result that is too long only fails its own command chain"() {
+        given:
+        transport.maxPayloadLength = 1000
+        def inFlight = remote.execAsync { Thread.sleep(200); 1 }
+
+        when:
+        remote.exec { "x" * 2000 }
+
+        then:
+        def e = thrown(RemoteControlException)
+        e.message.contains("exceeds the maximum payload length")
+
+        and:
+        inFlight.get() == 1
+        remote.exec { 2 } == 2
+    }
+
+    def "a command chain that is too long only fails itself"() {
+        given:
+        server.maxPayloadLength = 10
+
+        when:
+        remote.exec { 1 }
+
+        then:
+        def e = thrown(RemoteControlException)
+        e.message.contains("exceeds the maximum payload length")
+
+        when:
+        remote.exec { 2 }
+
+        then:
+        e = thrown(RemoteControlException)
+        e.message.contains("exceeds the maximum payload length")
+    }
+
+    def "connection is reopened after it is lost"() {
+        given:
+        remote.exec { 1 }
+        transport.close()
+
+        expect:
+        remote.exec { 2 } == 2
+    }
+
+}